@@ -0,0 +1,117 @@
+package com.neonlight.demo;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@link Argb}与原来changeAlpha和ValueAnimator.ofArgb取值方式的对比
+ * <p>
+ * 原来的写法依赖android.graphics.Color和android.animation.ArgbEvaluator,这里按它们的实现原样复制,
+ * getAnimatedValue返回的装箱对象用Integer.valueOf模拟
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ArgbBenchmark {
+
+    private static final int FOREGROUND = 0xFF00FBFB;
+    private static final int BACKGROUND = 0xB4005BFF;
+
+    private int mFrame;
+
+    @Benchmark
+    public void changeAlpha(Blackhole blackhole) {
+        Object animatedValue = Integer.valueOf(nextFrame() & 0xFF);
+        blackhole.consume(changeAlpha(FOREGROUND, (Integer) animatedValue));
+    }
+
+    @Benchmark
+    public void withAlpha(Blackhole blackhole) {
+        blackhole.consume(Argb.withAlpha(FOREGROUND, nextFrame() & 0xFF));
+    }
+
+    @Benchmark
+    public void ofArgb(Blackhole blackhole) {
+        Object animatedValue = evaluate((nextFrame() & 0xFF) / 255f, FOREGROUND, BACKGROUND);
+        blackhole.consume((int) (Integer) animatedValue);
+    }
+
+    @Benchmark
+    public void lerp(Blackhole blackhole) {
+        blackhole.consume(Argb.lerp(FOREGROUND, BACKGROUND, (nextFrame() & 0xFF) / 255f));
+    }
+
+    private int nextFrame() {
+        return mFrame++;
+    }
+
+    /**
+     * 原NeonLight.changeAlpha,Color.red/green/blue/argb展开后的实现
+     */
+    private static int changeAlpha(int color, int alpha) {
+        int red = red(color);
+        int green = green(color);
+        int blue = blue(color);
+        return argb(alpha, red, green, blue);
+    }
+
+    private static int red(int color) {
+        return (color >> 16) & 0xFF;
+    }
+
+    private static int green(int color) {
+        return (color >> 8) & 0xFF;
+    }
+
+    private static int blue(int color) {
+        return color & 0xFF;
+    }
+
+    private static int argb(int alpha, int red, int green, int blue) {
+        return (alpha << 24) | (red << 16) | (green << 8) | blue;
+    }
+
+    /**
+     * ArgbEvaluator.evaluate,API 26开始在线性空间中插值
+     */
+    private static Object evaluate(float fraction, Object startValue, Object endValue) {
+        int startInt = (Integer) startValue;
+        float startA = ((startInt >> 24) & 0xff) / 255.0f;
+        float startR = ((startInt >> 16) & 0xff) / 255.0f;
+        float startG = ((startInt >> 8) & 0xff) / 255.0f;
+        float startB = (startInt & 0xff) / 255.0f;
+
+        int endInt = (Integer) endValue;
+        float endA = ((endInt >> 24) & 0xff) / 255.0f;
+        float endR = ((endInt >> 16) & 0xff) / 255.0f;
+        float endG = ((endInt >> 8) & 0xff) / 255.0f;
+        float endB = (endInt & 0xff) / 255.0f;
+
+        startR = (float) Math.pow(startR, 2.2);
+        startG = (float) Math.pow(startG, 2.2);
+        startB = (float) Math.pow(startB, 2.2);
+
+        endR = (float) Math.pow(endR, 2.2);
+        endG = (float) Math.pow(endG, 2.2);
+        endB = (float) Math.pow(endB, 2.2);
+
+        float a = startA + fraction * (endA - startA);
+        float r = startR + fraction * (endR - startR);
+        float g = startG + fraction * (endG - startG);
+        float b = startB + fraction * (endB - startB);
+
+        a = a * 255.0f;
+        r = (float) Math.pow(r, 1.0 / 2.2) * 255.0f;
+        g = (float) Math.pow(g, 1.0 / 2.2) * 255.0f;
+        b = (float) Math.pow(b, 1.0 / 2.2) * 255.0f;
+
+        return Math.round(a) << 24 | Math.round(r) << 16 | Math.round(g) << 8 | Math.round(b);
+    }
+}
@@ -0,0 +1,51 @@
+package com.neonlight.demo;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 判断一帧是否有可见变化的耗时,分别测量START两个点都没有变化和颜色有变化的情况
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FrameBenchmark {
+
+    private static final int WIDTH = 720;
+
+    private final Frame mFrame = new Frame();
+
+    private final Frame mSame = new Frame();
+
+    private final Frame mChanged = new Frame();
+
+    @Setup
+    public void setUp() {
+        LightStateMachine stateMachine = new LightStateMachine(Timeline.getDefault());
+        stateMachine.setSize(WIDTH, WIDTH / 4f);
+        stateMachine.setState(com.neonlight.demo.State.START);
+        stateMachine.advance(0);
+        stateMachine.advance(300000000L);
+        mFrame.copyFrom(stateMachine.getFrame());
+        mSame.copyFrom(mFrame);
+        mChanged.copyFrom(mFrame);
+        mChanged.centerColor[1] = Argb.withAlpha(mChanged.centerColor[1], 0x80);
+    }
+
+    @Benchmark
+    public int diffUnchanged() {
+        return mFrame.diff(mSame, WIDTH);
+    }
+
+    @Benchmark
+    public int diffChanged() {
+        return mFrame.diff(mChanged, WIDTH);
+    }
+}
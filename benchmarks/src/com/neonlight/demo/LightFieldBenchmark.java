@@ -0,0 +1,50 @@
+package com.neonlight.demo;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 光场一行的耗时与点数的关系.点均匀分布,半径为宽度的1/8,相邻的点部分重叠
+ * <p>
+ * 每个点只遍历自己覆盖的列,点数增加时成本按覆盖的列数增长,最后换成颜色的一次遍历与点数无关
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LightFieldBenchmark {
+
+    @Param({ "1", "2", "4", "8" })
+    public int points;
+
+    @Param({ "720", "1440" })
+    public int width;
+
+    private final SoftwareRasterizer mRasterizer = new SoftwareRasterizer();
+
+    private final LightField mField = new LightField();
+
+    private int[] mRow;
+
+    @Setup
+    public void setUp() {
+        mField.clear();
+        for (int i = 0; i < points; i++) {
+            mField.addPoint((i + 0.5f) / points, width / 8f, 0.8f);
+        }
+        mRow = new int[width];
+    }
+
+    @Benchmark
+    public int[] drawField() {
+        mRasterizer.drawField(mField, Palette.DEFAULT, width, mRow, 0);
+        return mRow;
+    }
+}
@@ -0,0 +1,44 @@
+package com.neonlight.demo;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 每帧推进状态机的耗时,只测量循环播放的状态
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LightStateMachineBenchmark {
+
+    private static final long FRAME_NANOS = 16666667L;
+
+    @Param({ "LISTENING", "THINKING", "SPEAKING" })
+    public String state;
+
+    private LightStateMachine mStateMachine;
+
+    private long mTime;
+
+    @Setup
+    public void setUp() {
+        mStateMachine = new LightStateMachine(Timeline.getDefault());
+        mStateMachine.setSize(720, 180);
+        mStateMachine.setState(com.neonlight.demo.State.valueOf(state));
+    }
+
+    @Benchmark
+    public Frame advance() {
+        mTime += FRAME_NANOS;
+        mStateMachine.advance(mTime);
+        return mStateMachine.getFrame();
+    }
+}
@@ -0,0 +1,81 @@
+package com.neonlight.demo;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 环形与条形一帧的耗时对比.环带宽度与NeonLight默认一样为外半径的15%
+ * <p>
+ * 条形的宽高取环带展开后的尺寸(周长 x 环带宽度),两者点亮的像素数相近,使用同一帧.
+ * ring是查找表贴图,barRaster是逐像素计算整个条形,barStrip是条形STRIP模式只算一行
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RingBenchmark {
+
+    private static final float RING_THICKNESS = 0.15f;
+
+    @Param({ "START", "THINKING" })
+    public String state;
+
+    /**
+     * 圆形view的边长(px)
+     */
+    @Param({ "240", "400" })
+    public int size;
+
+    private final SoftwareRasterizer mRasterizer = new SoftwareRasterizer();
+
+    private RingGeometry mRing;
+
+    private Frame mFrame;
+
+    private int mBarWidth;
+    private int mBarHeight;
+
+    private int[] mRingPixels;
+    private int[] mBarPixels;
+
+    @Setup
+    public void setUp() {
+        float thickness = size / 2f * RING_THICKNESS;
+        mRing = new RingGeometry(size, size, thickness);
+        mBarWidth = mRing.getLength();
+        mBarHeight = Math.max(1, Math.round(thickness));
+        LightStateMachine stateMachine = new LightStateMachine(Timeline.getDefault());
+        stateMachine.setSize(mBarWidth, mBarWidth / 4f);
+        stateMachine.setState(com.neonlight.demo.State.valueOf(state));
+        stateMachine.advance(0);
+        stateMachine.advance(300000000L);
+        mFrame = stateMachine.getFrame();
+        mRingPixels = new int[size * size];
+        mBarPixels = new int[mBarWidth * mBarHeight];
+    }
+
+    @Benchmark
+    public int[] ring() {
+        mRing.draw(mRasterizer, mFrame, mRingPixels);
+        return mRingPixels;
+    }
+
+    @Benchmark
+    public int[] barRaster() {
+        mRasterizer.draw(mFrame, mBarWidth, mBarHeight, mBarPixels);
+        return mBarPixels;
+    }
+
+    @Benchmark
+    public int[] barStrip() {
+        mRasterizer.drawRow(mFrame, mBarWidth, 0.5f, mBarPixels, 0);
+        return mBarPixels;
+    }
+}
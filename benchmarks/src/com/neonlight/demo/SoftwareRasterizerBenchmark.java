@@ -0,0 +1,53 @@
+package com.neonlight.demo;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 计算一行像素的耗时,START是两个点各画一半,THINKING是一个点铺满整行
+ * <p>
+ * 这一行就是{@link NeonLight#RENDER_MODE_STRIP}每帧在CPU上的全部计算,之后只是把1像素高的Bitmap拉伸绘制.
+ * SHADER模式的耗时在Skia中,需要在设备上用NeonLightMetrics测量
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SoftwareRasterizerBenchmark {
+
+    @Param({ "START", "LISTENING", "THINKING", "SPEAKING" })
+    public String state;
+
+    @Param({ "360", "720", "1440" })
+    public int width;
+
+    private final SoftwareRasterizer mRasterizer = new SoftwareRasterizer();
+
+    private int[] mRow;
+
+    private Frame mFrame;
+
+    @Setup
+    public void setUp() {
+        LightStateMachine stateMachine = new LightStateMachine(Timeline.getDefault());
+        stateMachine.setSize(width, width / 4f);
+        stateMachine.setState(com.neonlight.demo.State.valueOf(state));
+        stateMachine.advance(0);
+        stateMachine.advance(300000000L);
+        mFrame = stateMachine.getFrame();
+        mRow = new int[width];
+    }
+
+    @Benchmark
+    public int[] drawRow() {
+        mRasterizer.drawRow(mFrame, width, 0.5f, mRow, 0);
+        return mRow;
+    }
+}
@@ -0,0 +1,71 @@
+package com.neonlight.demo;
+
+/**
+ * ARGB颜色的位运算工具
+ * <p>
+ * 只使用int运算,不经过Color的各个方法,也不会产生装箱对象,用于每帧的颜色计算
+ */
+final class Argb {
+
+    private Argb() {
+    }
+
+    /**
+     * 替换颜色的透明度
+     */
+    static int withAlpha(int color, int alpha) {
+        return (color & 0x00FFFFFF) | (alpha << 24);
+    }
+
+    /**
+     * 每个通道保留高6位,低2位用高位补齐,保证量化后0和255不变
+     */
+    static int quantize(int color) {
+        return (color & 0xFCFCFCFC) | ((color >>> 6) & 0x03030303);
+    }
+
+    /**
+     * 两个颜色按比例插值
+     *
+     * @param fraction [0, 1]
+     */
+    static int lerp(int from, int to, float fraction) {
+        return lerp(from, to, (int) (fraction * 256 + 0.5f));
+    }
+
+    /**
+     * 两个颜色按比例插值,R/B和A/G两两打包在同一个int里同时计算
+     *
+     * @param weight [0, 256],256时结果为to
+     */
+    static int lerp(int from, int to, int weight) {
+        int inverse = 256 - weight;
+        int rb = ((from & 0x00FF00FF) * inverse + (to & 0x00FF00FF) * weight) >>> 8;
+        int ag = ((from >>> 8) & 0x00FF00FF) * inverse + ((to >>> 8) & 0x00FF00FF) * weight;
+        return (rb & 0x00FF00FF) | (ag & 0xFF00FF00);
+    }
+
+    /**
+     * 在预乘空间中插值,返回非预乘的颜色,与Skia绘制两种透明度不同的渐变时一致
+     *
+     * @param weight [0, 256],256时结果为to
+     */
+    static int lerpPremultiplied(int from, int to, int weight) {
+        int fromAlpha = from >>> 24;
+        int toAlpha = to >>> 24;
+        if (fromAlpha == toAlpha) {
+            return lerp(from, to, weight);
+        }
+        int fromWeight = fromAlpha * (256 - weight);
+        int toWeight = toAlpha * weight;
+        int alpha = fromWeight + toWeight;
+        if (alpha == 0) {
+            return 0;
+        }
+        int half = alpha >> 1;
+        int red = (((from >> 16) & 0xFF) * fromWeight + ((to >> 16) & 0xFF) * toWeight + half) / alpha;
+        int green = (((from >> 8) & 0xFF) * fromWeight + ((to >> 8) & 0xFF) * toWeight + half) / alpha;
+        int blue = ((from & 0xFF) * fromWeight + (to & 0xFF) * toWeight + half) / alpha;
+        return ((alpha + 128) >> 8) << 24 | red << 16 | green << 8 | blue;
+    }
+}
@@ -0,0 +1,190 @@
+package com.neonlight.demo;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 把实时PCM数据转换为平滑的音量
+ * <p>
+ * 录音线程通过{@link #write}把16位PCM写入单生产者单消费者的环形缓冲区,后台线程每10ms取出一块计算RMS,
+ * 再经过起音/释放包络平滑后映射到[0, 1].写入和计算都不加锁也不分配对象,UI线程只读取一个volatile的结果.
+ * 后台线程在第一次写入时启动,一段时间没有数据后自动退出.不依赖Android,可以在JVM上离线回放音频.
+ */
+final class AudioLevelMeter {
+
+    /**
+     * 缓冲区大小,16kHz下约1秒
+     */
+    private static final int CAPACITY = 1 << 14;
+    private static final int MASK = CAPACITY - 1;
+
+    private static final int BLOCK_MILLIS = 10;
+    private static final float ATTACK_MILLIS = 20;
+    private static final float RELEASE_MILLIS = 150;
+
+    /**
+     * 低于这个分贝数认为是静音
+     */
+    private static final float FLOOR_DB = -60;
+
+    /**
+     * 超过这个时间没有新数据认为音频已经停止
+     */
+    private static final long ACTIVE_TIMEOUT_NANOS = 300000000L;
+
+    private static final long PARK_NANOS = 5000000L;
+    private static final long IDLE_EXIT_NANOS = 1000000000L;
+
+    private final short[] mBuffer = new short[CAPACITY];
+
+    /**
+     * 只由生产者写
+     */
+    private volatile long mWriteIndex;
+
+    /**
+     * 只由后台线程写
+     */
+    private volatile long mReadIndex;
+
+    private volatile float mLevel;
+
+    private volatile long mLastFeedNanos;
+
+    private volatile int mDroppedSampleCount;
+
+    private final AtomicBoolean mRunning = new AtomicBoolean();
+
+    private int mBlockSize;
+    private float mAttack;
+    private float mRelease;
+
+    private final Runnable mWorker = new Runnable() {
+        @Override
+        public void run() {
+            process();
+        }
+    };
+
+    AudioLevelMeter() {
+        setSampleRate(16000);
+    }
+
+    /**
+     * 在开始写入前调用
+     */
+    void setSampleRate(int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("Invalid sample rate: " + sampleRate);
+        }
+        mBlockSize = Math.max(1, Math.min(CAPACITY / 2, sampleRate * BLOCK_MILLIS / 1000));
+        mAttack = (float) (1 - Math.exp(-BLOCK_MILLIS / ATTACK_MILLIS));
+        mRelease = (float) (1 - Math.exp(-BLOCK_MILLIS / RELEASE_MILLIS));
+    }
+
+    /**
+     * 写入PCM数据,只能由同一个线程调用.缓冲区满时丢弃放不下的部分
+     */
+    void write(short[] pcm, int length) {
+        long write = mWriteIndex;
+        int count = (int) Math.min(length, CAPACITY - (write - mReadIndex));
+        for (int i = 0; i < count; i++) {
+            mBuffer[(int) (write + i) & MASK] = pcm[i];
+        }
+        mWriteIndex = write + count;
+        if (count < length) {
+            mDroppedSampleCount += length - count;
+        }
+        mLastFeedNanos = System.nanoTime();
+        ensureRunning();
+    }
+
+    /**
+     * 直接写入已经算好的音量,不经过后台线程
+     *
+     * @param level [0, 1]
+     */
+    void writeLevel(float level) {
+        mLevel = Math.max(0, Math.min(1, level));
+        mLastFeedNanos = System.nanoTime();
+    }
+
+    /**
+     * @return 平滑后的音量,[0, 1]
+     */
+    float getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * 最近是否有音频输入
+     */
+    boolean isActive(long nowNanos) {
+        long last = mLastFeedNanos;
+        return last != 0 && nowNanos - last < ACTIVE_TIMEOUT_NANOS;
+    }
+
+    int getDroppedSampleCount() {
+        return mDroppedSampleCount;
+    }
+
+    /**
+     * 后台线程已经计算过的采样数,离线回放时用于等待计算完成
+     */
+    long getProcessedSampleCount() {
+        return mReadIndex;
+    }
+
+    private void ensureRunning() {
+        if (mRunning.compareAndSet(false, true)) {
+            Thread thread = new Thread(mWorker, "NeonLightAudio");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void process() {
+        long idleSince = System.nanoTime();
+        while (true) {
+            int block = mBlockSize;
+            long read = mReadIndex;
+            if (mWriteIndex - read < block) {
+                if (System.nanoTime() - idleSince < IDLE_EXIT_NANOS) {
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                    continue;
+                }
+                mRunning.set(false);
+                // 退出前再检查一次,避免和write中的ensureRunning错过
+                if (mWriteIndex - mReadIndex < block || !mRunning.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+            long sum = 0;
+            for (int i = 0; i < block; i++) {
+                int sample = mBuffer[(int) (read + i) & MASK];
+                sum += sample * sample;
+            }
+            mReadIndex = read + block;
+            updateEnvelope(toLevel(Math.sqrt((double) sum / block)));
+            idleSince = System.nanoTime();
+        }
+    }
+
+    private void updateEnvelope(float target) {
+        float level = mLevel;
+        level += (target - level) * (target > level ? mAttack : mRelease);
+        mLevel = level;
+    }
+
+    /**
+     * RMS按分贝线性映射到[0, 1]
+     */
+    static float toLevel(double rms) {
+        if (rms <= 0) {
+            return 0;
+        }
+        float db = (float) (20 * Math.log10(rms / 32768));
+        return Math.max(0, Math.min(1, (db - FLOOR_DB) / -FLOOR_DB));
+    }
+}
@@ -0,0 +1,119 @@
+package com.neonlight.demo;
+
+import android.animation.TimeInterpolator;
+import android.view.View;
+import android.view.ViewPropertyAnimator;
+
+/**
+ * 用ViewPropertyAnimator执行{@link CompositePlan}
+ * <p>
+ * ViewPropertyAnimator在UI线程上推进,每帧只修改RenderNode的alpha或者scaleX,不需要重新录制和光栅化view的内容,
+ * UI线程卡住时动画同样会停.公开API中没有能在RenderThread上推进alpha/scaleX的动画,RenderNodeAnimator是隐藏接口.
+ * 时间轴的关键帧通过插值器表达:属性从0动画到1,插值器直接返回属性值.
+ * 使用期间占用view的alpha,scaleX和pivotX,结束后恢复为1.
+ */
+final class CompositeAnimator {
+
+    /**
+     * 循环的阶段一次动画覆盖的时长,到期后由宿主重新开始
+     */
+    private static final long LOOP_SPAN_NANOS = 60000000000L;
+
+    private final View mView;
+
+    private CompositePlan mPlan;
+
+    private long mEndNanos;
+
+    /**
+     * 每次start时更新参数,不重新创建
+     */
+    private final PlanInterpolator mInterpolator = new PlanInterpolator();
+
+    CompositeAnimator(View view) {
+        mView = view;
+    }
+
+    /**
+     * @return 正在执行的计划,没有时为null
+     */
+    CompositePlan getPlan() {
+        return mPlan;
+    }
+
+    /**
+     * @param frameTimeNanos 当前帧的时间,与{@link CompositePlan#startNanos}使用同一个时基
+     */
+    void start(CompositePlan plan, long frameTimeNanos) {
+        cancel();
+        mPlan = plan;
+        long offsetNanos = frameTimeNanos - plan.startNanos;
+        long durationNanos = plan.loop ? LOOP_SPAN_NANOS : Math.max(0, plan.durationNanos - offsetNanos);
+        mEndNanos = frameTimeNanos + durationNanos;
+        if (durationNanos < 1000000L) {
+            setProperty(plan.property, plan.valueAt(offsetNanos + durationNanos));
+            return;
+        }
+        if (plan.property == CompositePlan.PROPERTY_SCALE_X) {
+            mView.setPivotX(plan.pivotX);
+        }
+        setProperty(plan.property, 0);
+        mInterpolator.set(plan, offsetNanos, durationNanos);
+        ViewPropertyAnimator animator = mView.animate()
+                .setDuration(durationNanos / 1000000L)
+                .setStartDelay(0)
+                .setInterpolator(mInterpolator);
+        if (plan.property == CompositePlan.PROPERTY_ALPHA) {
+            animator.alpha(1);
+        } else {
+            animator.scaleX(1);
+        }
+        animator.start();
+    }
+
+    /**
+     * 循环的阶段覆盖的时长是否已经用完
+     */
+    boolean isExpired(long frameTimeNanos) {
+        return mPlan != null && mPlan.loop && frameTimeNanos >= mEndNanos;
+    }
+
+    void cancel() {
+        if (mPlan == null) {
+            return;
+        }
+        mView.animate().cancel();
+        mView.setAlpha(1);
+        mView.setScaleX(1);
+        mPlan = null;
+    }
+
+    private void setProperty(int property, float value) {
+        if (property == CompositePlan.PROPERTY_ALPHA) {
+            mView.setAlpha(value);
+        } else {
+            mView.setScaleX(value);
+        }
+    }
+
+    /**
+     * 把动画进度换算为计划中的时间,返回那一刻的属性值
+     */
+    private static final class PlanInterpolator implements TimeInterpolator {
+
+        private CompositePlan mPlan;
+        private long mOffsetNanos;
+        private long mDurationNanos;
+
+        void set(CompositePlan plan, long offsetNanos, long durationNanos) {
+            mPlan = plan;
+            mOffsetNanos = offsetNanos;
+            mDurationNanos = durationNanos;
+        }
+
+        @Override
+        public float getInterpolation(float input) {
+            return mPlan.valueAt(mOffsetNanos + (long) (input * mDurationNanos));
+        }
+    }
+}
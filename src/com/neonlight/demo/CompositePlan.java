@@ -0,0 +1,75 @@
+package com.neonlight.demo;
+
+/**
+ * 可以改用View属性动画完成的阶段
+ * <p>
+ * 这样的阶段只有一个随时间变化的量,并且等价于对一张固定画面{@link #base}调整透明度或者横向缩放.
+ * 画面只绘制一次,之后由属性动画修改RenderNode的属性推进.由{@link LightStateMachine#planComposite}创建.
+ */
+final class CompositePlan {
+
+    /**
+     * View的alpha,值为相对于base的透明度
+     */
+    static final int PROPERTY_ALPHA = 0;
+    /**
+     * 以点的圆心为轴心的scaleX,值为相对于base的半径
+     */
+    static final int PROPERTY_SCALE_X = 1;
+
+    final Phase phase;
+    final int property;
+
+    /**
+     * 固定的画面,属性为1时与原来的绘制结果相同
+     */
+    final Frame base = new Frame();
+
+    /**
+     * 阶段线性进度i / SAMPLES时的属性值
+     */
+    final float[] values = new float[Timeline.SAMPLES + 1];
+
+    final long durationNanos;
+
+    /**
+     * 阶段结束后是否重复
+     */
+    final boolean loop;
+
+    final long startNanos;
+
+    /**
+     * 缩放的轴心
+     */
+    final float pivotX;
+
+    CompositePlan(Phase phase, int property, long durationNanos, boolean loop, long startNanos, float pivotX) {
+        this.phase = phase;
+        this.property = property;
+        this.durationNanos = durationNanos;
+        this.loop = loop;
+        this.startNanos = startNanos;
+        this.pivotX = pivotX;
+    }
+
+    /**
+     * @param elapsedNanos 从阶段开始经过的时间,循环的阶段可以超过一轮
+     */
+    float valueAt(long elapsedNanos) {
+        if (elapsedNanos < 0) {
+            return values[0];
+        }
+        if (loop) {
+            elapsedNanos %= durationNanos;
+        } else if (elapsedNanos >= durationNanos) {
+            return values[Timeline.SAMPLES];
+        }
+        float position = (float) elapsedNanos / durationNanos * Timeline.SAMPLES;
+        int index = (int) position;
+        if (index >= Timeline.SAMPLES) {
+            return values[Timeline.SAMPLES];
+        }
+        return values[index] + (values[index + 1] - values[index]) * (position - index);
+    }
+}
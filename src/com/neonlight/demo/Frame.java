@@ -0,0 +1,122 @@
+package com.neonlight.demo;
+
+/**
+ * 一帧的绘制参数,由{@link LightStateMachine}计算,{@link LightRenderer}绘制
+ */
+final class Frame {
+
+    static final int MAX_POINTS = 2;
+
+    /**
+     * 渐变的位置,半径的0.75以内为圆心颜色,之后过渡到边缘颜色
+     */
+    static final float[] EDGE_STOPS = new float[] { 0.75f, 1.0f };
+
+    /**
+     * {@link #diff}的结果,所有内容都有变化
+     */
+    static final int CHANGED_ALL = -1;
+
+    /**
+     * 位置和半径小于这个像素差时认为看不出变化
+     */
+    private static final float VISIBLE_DELTA = 0.25f;
+
+    /**
+     * 是否在执行动画,否则绘制{@link #fillColor}纯色
+     */
+    boolean animating;
+    /**
+     * 静止时的填充色,透明表示不绘制
+     */
+    int fillColor;
+    /**
+     * 两个点是否以中点为界各自绘制一半,否则第一个点铺满整个view
+     */
+    boolean split;
+    int pointCount;
+    /**
+     * 点的位置,相对于宽度的比例
+     */
+    final float[] position = new float[MAX_POINTS];
+    final float[] radius = new float[MAX_POINTS];
+    final int[] centerColor = new int[MAX_POINTS];
+    final int[] edgeColor = new int[MAX_POINTS];
+
+    float centerX(int index, float width) {
+        return width * position[index];
+    }
+
+    /**
+     * 与上一次绘制的帧比较,颜色按绘制时同样的精度量化后比较
+     *
+     * @return 0表示没有可见的变化,否则第i位表示第i个点有变化,或者{@link #CHANGED_ALL}
+     */
+    int diff(Frame drawn, float width) {
+        if (animating != drawn.animating || split != drawn.split || pointCount != drawn.pointCount) {
+            return CHANGED_ALL;
+        }
+        if (!animating) {
+            return fillColor != drawn.fillColor ? CHANGED_ALL : 0;
+        }
+        int changed = 0;
+        for (int i = 0; i < pointCount; i++) {
+            if (Math.abs(centerX(i, width) - drawn.centerX(i, width)) >= VISIBLE_DELTA
+                    || Math.abs(radius[i] - drawn.radius[i]) >= VISIBLE_DELTA
+                    || Argb.quantize(centerColor[i]) != Argb.quantize(drawn.centerColor[i])
+                    || Argb.quantize(edgeColor[i]) != Argb.quantize(drawn.edgeColor[i])) {
+                changed |= 1 << i;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 两个点分界的位置
+     */
+    float middleX(float width) {
+        return (centerX(0, width) + centerX(1, width)) / 2;
+    }
+
+    /**
+     * 与上一次绘制的帧相比分界线是否没有移动
+     */
+    boolean sameMiddle(Frame drawn, float width) {
+        return Math.abs(middleX(width) - drawn.middleX(width)) < VISIBLE_DELTA;
+    }
+
+    void resetPoint(int index, float baseRadius, int centerColor, int edgeColor) {
+        position[index] = 0.5f;
+        radius[index] = baseRadius;
+        this.centerColor[index] = centerColor;
+        this.edgeColor[index] = edgeColor;
+    }
+
+    /**
+     * 从from过渡到当前的参数,用于状态切换时的交叉淡入
+     *
+     * @param fraction [0, 1],1时保持当前的参数不变
+     */
+    void blendFrom(Frame from, float fraction) {
+        int count = Math.min(pointCount, from.pointCount);
+        for (int i = 0; i < count; i++) {
+            position[i] = from.position[i] + (position[i] - from.position[i]) * fraction;
+            radius[i] = from.radius[i] + (radius[i] - from.radius[i]) * fraction;
+            centerColor[i] = Argb.lerp(from.centerColor[i], centerColor[i], fraction);
+            edgeColor[i] = Argb.lerp(from.edgeColor[i], edgeColor[i], fraction);
+        }
+    }
+
+    void copyFrom(Frame other) {
+        animating = other.animating;
+        fillColor = other.fillColor;
+        split = other.split;
+        pointCount = other.pointCount;
+        for (int i = 0; i < MAX_POINTS; i++) {
+            position[i] = other.position[i];
+            radius[i] = other.radius[i];
+            centerColor[i] = other.centerColor[i];
+            edgeColor[i] = other.edgeColor[i];
+        }
+    }
+}
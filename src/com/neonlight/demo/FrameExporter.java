@@ -0,0 +1,218 @@
+package com.neonlight.demo;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 在JVM上离线导出各个状态的动画帧,用于设计评审和像素级回归对比
+ * <p>
+ * 与NeonLight使用同一个状态机和时间轴,按固定帧率推进后用{@link SoftwareRasterizer}光栅化,不需要Android运行环境.
+ * 每个状态的帧参数先顺序计算,光栅化和编码在ForkJoinPool中并行执行.
+ */
+public final class FrameExporter {
+
+    /**
+     * 每帧一个PNG文件
+     */
+    public static final int FORMAT_PNG = 0;
+    /**
+     * 每帧一个文件,按行存放的大端ARGB int
+     */
+    public static final int FORMAT_RAW = 1;
+
+    /**
+     * 每个任务光栅化的帧数
+     */
+    private static final int FRAMES_PER_TASK = 8;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mFps;
+    private final int mPointRadius;
+    private Timeline mTimeline = Timeline.getDefault();
+    private ForkJoinPool mPool = ForkJoinPool.commonPool();
+
+    /**
+     * 接收光栅化后的帧,会在多个线程中同时调用
+     */
+    public interface FrameSink {
+        /**
+         * @param pixels 非预乘的ARGB,只在回调期间有效
+         */
+        void onFrame(State state, int index, int[] pixels, int width, int height) throws IOException;
+    }
+
+    /**
+     * @param pointRadius 点的初始半径,对应NeonLight中的120dp
+     */
+    public FrameExporter(int width, int height, int fps, int pointRadius) {
+        if (width <= 0 || height <= 0 || fps <= 0) {
+            throw new IllegalArgumentException("Invalid size or fps: " + width + "x" + height + "@" + fps);
+        }
+        mWidth = width;
+        mHeight = height;
+        mFps = fps;
+        mPointRadius = pointRadius;
+    }
+
+    public void setTimeline(Timeline timeline) {
+        mTimeline = timeline != null ? timeline : Timeline.getDefault();
+    }
+
+    public void setPool(ForkJoinPool pool) {
+        mPool = pool;
+    }
+
+    /**
+     * 从IDLE切换到各个状态后导出frameCount帧
+     */
+    public void render(State[] states, int frameCount, final FrameSink sink) throws IOException {
+        final List<RenderTask> tasks = new ArrayList<RenderTask>();
+        for (State state : states) {
+            Frame[] frames = simulate(state, frameCount);
+            for (int from = 0; from < frameCount; from += FRAMES_PER_TASK) {
+                tasks.add(new RenderTask(state, frames, from, Math.min(frameCount, from + FRAMES_PER_TASK), sink));
+            }
+        }
+        try {
+            mPool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        } catch (RuntimeException e) {
+            // 其他线程抛出的异常可能被ForkJoinTask再包装一层,沿cause查找
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) cause).getCause();
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 导出到目录,文件名为"状态_序号.png"或"状态_序号.raw"
+     */
+    public void export(State[] states, int frameCount, final File dir, final int format) throws IOException {
+        if (format != FORMAT_PNG && format != FORMAT_RAW) {
+            throw new IllegalArgumentException("Unknown format: " + format);
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        final ThreadLocal<PngEncoder> encoders = new ThreadLocal<PngEncoder>() {
+            @Override
+            protected PngEncoder initialValue() {
+                return new PngEncoder();
+            }
+        };
+        render(states, frameCount, new FrameSink() {
+            @Override
+            public void onFrame(State state, int index, int[] pixels, int width, int height) throws IOException {
+                String name = String.format(Locale.US, "%s_%04d.%s", state.name().toLowerCase(Locale.US), index,
+                        format == FORMAT_PNG ? "png" : "raw");
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(dir, name)), 1 << 16);
+                try {
+                    if (format == FORMAT_PNG) {
+                        encoders.get().encode(pixels, width, height, out);
+                    } else {
+                        writeRaw(pixels, width * height, out);
+                    }
+                } finally {
+                    out.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * 按固定帧率推进状态机,记录每一帧的参数
+     */
+    Frame[] simulate(State state, int frameCount) {
+        LightStateMachine stateMachine = new LightStateMachine(mTimeline);
+        stateMachine.setSize(mWidth, mPointRadius);
+        stateMachine.setState(state);
+        Frame[] frames = new Frame[frameCount];
+        long frameNanos = 1000000000L / mFps;
+        for (int i = 0; i < frameCount; i++) {
+            stateMachine.advance(i * frameNanos);
+            frames[i] = new Frame();
+            frames[i].copyFrom(stateMachine.getFrame());
+        }
+        return frames;
+    }
+
+    private static void writeRaw(int[] pixels, int count, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        for (int i = 0; i < count; i++) {
+            data.writeInt(pixels[i]);
+        }
+        data.flush();
+    }
+
+    private final class RenderTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final State mState;
+        private final Frame[] mFrames;
+        private final int mFrom;
+        private final int mTo;
+        private final FrameSink mSink;
+
+        RenderTask(State state, Frame[] frames, int from, int to, FrameSink sink) {
+            mState = state;
+            mFrames = frames;
+            mFrom = from;
+            mTo = to;
+            mSink = sink;
+        }
+
+        @Override
+        protected void compute() {
+            SoftwareRasterizer rasterizer = new SoftwareRasterizer();
+            int[] pixels = new int[mWidth * mHeight];
+            try {
+                for (int i = mFrom; i < mTo; i++) {
+                    rasterizer.draw(mFrames[i], mWidth, mHeight, pixels);
+                    mSink.onFrame(mState, i, pixels, mWidth, mHeight);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * 用法: FrameExporter 输出目录 [宽 高 帧率 帧数 png|raw]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: FrameExporter <dir> [width height fps frames png|raw]");
+            System.exit(1);
+        }
+        int width = args.length > 1 ? Integer.parseInt(args[1]) : 1080;
+        int height = args.length > 2 ? Integer.parseInt(args[2]) : 48;
+        int fps = args.length > 3 ? Integer.parseInt(args[3]) : 60;
+        int frames = args.length > 4 ? Integer.parseInt(args[4]) : 120;
+        int format = args.length > 5 && "raw".equals(args[5]) ? FORMAT_RAW : FORMAT_PNG;
+        FrameExporter exporter = new FrameExporter(width, height, fps, 360);
+        long start = System.nanoTime();
+        State[] states = State.values();
+        exporter.export(states, frames, new File(args[0]), format);
+        long elapsed = System.nanoTime() - start;
+        System.out.println(String.format(Locale.US, "%d frames in %.1f ms, %.0f fps", states.length * frames,
+                elapsed / 1e6, states.length * frames * 1e9 / elapsed));
+    }
+}
@@ -0,0 +1,84 @@
+package com.neonlight.demo;
+
+/**
+ * 帧率控制策略
+ * <p>
+ * 时钟仍然每个vsync回调,由这里决定这一帧是否推进和绘制:每个状态可以设置最高帧率;
+ * 连续几帧都看不出变化时降到低帧率,出现可见变化后恢复.跳过的帧数记为节省的帧.
+ */
+final class FramePacer {
+
+    /**
+     * 画面基本静止时的帧率
+     */
+    static final int LOW_FRAME_RATE = 15;
+
+    /**
+     * 连续这么多帧没有可见变化后降到低帧率
+     */
+    private static final int QUIET_FRAMES_BEFORE_THROTTLE = 4;
+
+    /**
+     * 允许比帧间隔提前半个60Hz的vsync,避免与vsync不整除时忽快忽慢
+     */
+    private static final long TOLERANCE_NANOS = 8000000L;
+
+    private static final State[] STATES = State.values();
+
+    private final int[] mMaxFrameRates = new int[STATES.length];
+
+    private long mLastFrameNanos = -1;
+
+    private int mQuietFrames;
+
+    private int mSavedFrameCount;
+
+    /**
+     * @param frameRate 小于等于0表示不限制
+     */
+    void setMaxFrameRate(State state, int frameRate) {
+        mMaxFrameRates[state.ordinal()] = Math.max(0, frameRate);
+    }
+
+    int getMaxFrameRate(State state) {
+        return mMaxFrameRates[state.ordinal()];
+    }
+
+    /**
+     * @return 这一帧是否需要推进和绘制,否则计为节省一帧
+     */
+    boolean shouldRender(State state, long frameTimeNanos) {
+        if (mLastFrameNanos < 0) {
+            return true;
+        }
+        int frameRate = mMaxFrameRates[state.ordinal()];
+        if (mQuietFrames >= QUIET_FRAMES_BEFORE_THROTTLE && (frameRate <= 0 || frameRate > LOW_FRAME_RATE)) {
+            frameRate = LOW_FRAME_RATE;
+        }
+        if (frameRate <= 0 || frameTimeNanos - mLastFrameNanos >= 1000000000L / frameRate - TOLERANCE_NANOS) {
+            return true;
+        }
+        mSavedFrameCount++;
+        return false;
+    }
+
+    /**
+     * @param changed 这一帧是否有可见变化
+     */
+    void onRendered(long frameTimeNanos, boolean changed) {
+        mLastFrameNanos = frameTimeNanos;
+        mQuietFrames = changed ? 0 : mQuietFrames + 1;
+    }
+
+    /**
+     * 状态变化或者从暂停中恢复后调用,下一帧立即绘制并以全速开始
+     */
+    void reset() {
+        mLastFrameNanos = -1;
+        mQuietFrames = 0;
+    }
+
+    int getSavedFrameCount() {
+        return mSavedFrameCount;
+    }
+}
@@ -0,0 +1,158 @@
+package com.neonlight.demo;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RadialGradient;
+import android.graphics.Shader;
+import android.util.LruCache;
+
+/**
+ * 预先栅格化的渐变条缓存
+ * <p>
+ * 渐变条是只有透明度的遮罩,透明度为圆心颜色的权重,不包含颜色.以(半径档位, view宽高)为key缓存,多个NeonLight共享同一份缓存.
+ * 绘制时先填充边缘颜色,再用圆心颜色给遮罩着色叠加在上面,颜色逐帧变化的THINKING/SPEAKING也能命中缓存.
+ * 只用于圆心颜色不透明的点,这时叠加的透明度与RadialGradient一致,颜色相当于在预乘空间插值,边缘颜色半透明时略有差别.
+ * 遮罩只覆盖圆心两侧半径范围,两端透明,用CLAMP模式的BitmapShader铺满整个view.
+ */
+final class GradientSpriteCache {
+
+    private static GradientSpriteCache sInstance;
+
+    private final LruCache<Key, Sprite> mCache;
+
+    private GradientSpriteCache(int maxBytes) {
+        mCache = new LruCache<Key, Sprite>(maxBytes) {
+            @Override
+            protected int sizeOf(Key key, Sprite sprite) {
+                return sprite.bitmap.getByteCount();
+            }
+        };
+    }
+
+    static synchronized GradientSpriteCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new GradientSpriteCache((int) (Runtime.getRuntime().maxMemory() / 32));
+        }
+        return sInstance;
+    }
+
+    /**
+     * 获取渐变条,缓存中不存在时栅格化一份新的
+     *
+     * @param probe 查询用的key,只读取不保存,调用方可以复用同一个对象.返回后{@link Key#rasterized}表示这次是否新栅格化
+     */
+    Sprite obtain(Key probe, float[] stops) {
+        Sprite sprite = mCache.get(probe);
+        probe.rasterized = sprite == null;
+        if (sprite == null) {
+            Key key = new Key();
+            key.copyFrom(probe);
+            sprite = rasterize(key, stops);
+            mCache.put(key, sprite);
+        }
+        return sprite;
+    }
+
+    void resize(int maxBytes) {
+        mCache.resize(maxBytes);
+    }
+
+    void evictAll() {
+        mCache.evictAll();
+    }
+
+    int sizeBytes() {
+        return mCache.size();
+    }
+
+    int maxBytes() {
+        return mCache.maxSize();
+    }
+
+    int hitCount() {
+        return mCache.hitCount();
+    }
+
+    int missCount() {
+        return mCache.missCount();
+    }
+
+    int evictionCount() {
+        return mCache.evictionCount();
+    }
+
+    private static Sprite rasterize(Key key, float[] stops) {
+        int halfWidth = Math.min(key.radius, key.width);
+        Bitmap bitmap = Bitmap.createBitmap(halfWidth * 2, key.height, Bitmap.Config.ALPHA_8);
+        Paint paint = new Paint();
+        paint.setShader(new RadialGradient(halfWidth, key.height / 2, key.radius,
+                new int[] { 0xFF000000, 0 }, stops, Shader.TileMode.CLAMP));
+        new Canvas(bitmap).drawPaint(paint);
+        return new Sprite(bitmap, halfWidth);
+    }
+
+    /**
+     * 半径量化档位,保留最高的5个二进制位,档位间隔为半径的1/32到1/16
+     */
+    static int radiusBucket(float radius) {
+        int r = Math.max(1, Math.round(radius));
+        int step = Math.max(1, Integer.highestOneBit(r) >> 4);
+        return (r + step / 2) / step * step;
+    }
+
+    static final class Sprite {
+        final Bitmap bitmap;
+        final BitmapShader shader;
+        /**
+         * 圆心到渐变条左边缘的距离
+         */
+        final int halfWidth;
+
+        Sprite(Bitmap bitmap, int halfWidth) {
+            this.bitmap = bitmap;
+            this.shader = new BitmapShader(bitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+            this.halfWidth = halfWidth;
+        }
+    }
+
+    static final class Key {
+        int radius;
+        int width;
+        int height;
+        /**
+         * 不参与比较,只用于probe返回结果
+         */
+        boolean rasterized;
+
+        void set(float radius, int width, int height) {
+            this.radius = radiusBucket(radius);
+            this.width = width;
+            this.height = height;
+        }
+
+        void copyFrom(Key other) {
+            radius = other.radius;
+            width = other.width;
+            height = other.height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return radius == other.radius && width == other.width && height == other.height;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = radius;
+            result = 31 * result + width;
+            result = 31 * result + height;
+            return result;
+        }
+    }
+}
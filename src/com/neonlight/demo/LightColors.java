@@ -0,0 +1,27 @@
+package com.neonlight.demo;
+
+/**
+ * 默认配色,写成常量以便不依赖{@code android.graphics.Color}
+ */
+final class LightColors {
+
+    /**
+     * 前景色 argb(255, 0, 251, 251)
+     */
+    static final int FOREGROUND = 0xFF00FBFB;
+    /**
+     * 背景色 argb(180, 31, 59, 251)
+     */
+    static final int BACKGROUND = 0xB41F3BFB;
+    /**
+     * 错误提示颜色 argb(200, 248, 162, 77)
+     */
+    static final int ERROR = 0xC8F8A24D;
+    /**
+     * 麦克风关闭提示颜色 argb(200, 222, 38, 40)
+     */
+    static final int PRIVACY = 0xC8DE2628;
+
+    private LightColors() {
+    }
+}
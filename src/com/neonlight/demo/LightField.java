@@ -0,0 +1,73 @@
+package com.neonlight.demo;
+
+/**
+ * 同时显示的多个光点,用于显示声源方向等需要任意个点的场景
+ * <p>
+ * 每个点有独立的位置,半径和强度.重叠部分的强度相加,超过1时按1显示,颜色为当前配色从背景色到前景色的渐变.
+ * 绘制时所有点累加到同一行再纵向拉伸,每个点只遍历自己覆盖的列,耗时随点数和半径增长,
+ * 720px宽,半径为宽度1/8时8个点约为1个点的3倍(见LightFieldBenchmark).
+ * 这个类不是线程安全的,交给{@link NeonLight#setLightField}后可以继续修改并再次设置.
+ */
+public final class LightField {
+
+    public static final int MAX_POINTS = 8;
+
+    final float[] position = new float[MAX_POINTS];
+    final float[] radius = new float[MAX_POINTS];
+    final float[] intensity = new float[MAX_POINTS];
+
+    int pointCount;
+
+    public void clear() {
+        pointCount = 0;
+    }
+
+    /**
+     * 添加一个点
+     *
+     * @param position  圆心在宽度中的比例,[0, 1]
+     * @param radius    半径(px)
+     * @param intensity 强度,[0, 1]
+     */
+    public void addPoint(float position, float radius, float intensity) {
+        if (pointCount >= MAX_POINTS) {
+            throw new IllegalStateException("At most " + MAX_POINTS + " points");
+        }
+        setPoint(pointCount++, position, radius, intensity);
+    }
+
+    /**
+     * 修改已经添加的第index个点
+     */
+    public void setPoint(int index, float position, float radius, float intensity) {
+        if (index < 0 || index >= pointCount) {
+            throw new IndexOutOfBoundsException("Point " + index + " of " + pointCount);
+        }
+        this.position[index] = position;
+        this.radius[index] = Math.max(0, radius);
+        this.intensity[index] = Math.max(0, Math.min(1, intensity));
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    public float getPosition(int index) {
+        return position[index];
+    }
+
+    public float getRadius(int index) {
+        return radius[index];
+    }
+
+    public float getIntensity(int index) {
+        return intensity[index];
+    }
+
+    void copyFrom(LightField other) {
+        pointCount = other.pointCount;
+        System.arraycopy(other.position, 0, position, 0, pointCount);
+        System.arraycopy(other.radius, 0, radius, 0, pointCount);
+        System.arraycopy(other.intensity, 0, intensity, 0, pointCount);
+    }
+}
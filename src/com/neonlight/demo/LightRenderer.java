@@ -0,0 +1,329 @@
+package com.neonlight.demo;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * 把{@link Frame}绘制到Canvas上,NeonLight和NeonLightSurface共用
+ */
+final class LightRenderer {
+
+    private final Paint mPaint = new Paint();
+
+    /**
+     * 半径为0时填充纯色,与mPaint分开,避免颜色的透明度影响Shader
+     */
+    private final Paint mFillPaint = new Paint();
+
+    /**
+     * 给渐变条遮罩着色
+     */
+    private final Paint mSpritePaint = new Paint();
+
+    /**
+     * 为null时第一次使用时从{@link NeonLightEngine}获取
+     */
+    private ShaderBank mShaderBank;
+
+    /**
+     * ShaderBank的来源:从引擎获取的release时归还,自己创建的release时清空,外部传入的由外部管理
+     */
+    private static final int BANK_ENGINE = 0;
+    private static final int BANK_OWNED = 1;
+    private static final int BANK_EXTERNAL = 2;
+
+    private final int mShaderBankSource;
+
+    private final GradientSpriteCache mSpriteCache = GradientSpriteCache.getInstance();
+
+    private final GradientSpriteCache.Key mSpriteKey = new GradientSpriteCache.Key();
+
+    private int mRenderMode = NeonLight.RENDER_MODE_SHADER;
+
+    private int mSpriteAllocationCount;
+
+    /**
+     * 细条模式和光场用到的对象,第一次使用时创建,光栅化器也用于环形排布
+     */
+    private SoftwareRasterizer mStripRasterizer;
+    private int[] mStripRow;
+    private Bitmap mStripBitmap;
+    private final Rect mStripSrc = new Rect();
+    private final Rect mStripDst = new Rect();
+
+    /**
+     * 环形排布用到的整个view的像素和Bitmap,第一次使用时创建
+     */
+    private int[] mRingPixels;
+    private Bitmap mRingBitmap;
+
+    /**
+     * RuntimeShader模式用到的着色器,第一次使用时创建
+     */
+    private LightRuntimeShader mRuntimeShader;
+
+    private int mRuntimeShaderAllocationCount;
+
+    LightRenderer() {
+        mShaderBank = new ShaderBank(Frame.EDGE_STOPS);
+        mShaderBankSource = BANK_OWNED;
+    }
+
+    /**
+     * @param shaderBank 可以和同一线程上的其他LightRenderer共享,为null时在第一次使用时从{@link NeonLightEngine}获取,
+     *                   只能在UI线程使用
+     */
+    LightRenderer(ShaderBank shaderBank) {
+        mShaderBank = shaderBank;
+        mShaderBankSource = shaderBank == null ? BANK_ENGINE : BANK_EXTERNAL;
+    }
+
+    private ShaderBank shaderBank() {
+        if (mShaderBank == null) {
+            mShaderBank = NeonLightEngine.getInstance().obtainShaderBank(Frame.EDGE_STOPS);
+        }
+        return mShaderBank;
+    }
+
+    void setRenderMode(int renderMode) {
+        checkRenderMode(renderMode);
+        mRenderMode = renderMode;
+        if (renderMode != NeonLight.RENDER_MODE_STRIP) {
+            mStripBitmap = null;
+            mStripRow = null;
+        }
+        if (renderMode != NeonLight.RENDER_MODE_RUNTIME_SHADER) {
+            mRuntimeShader = null;
+        }
+    }
+
+    /**
+     * 释放这个实例的Bitmap和Shader,之后绘制时按需重新创建
+     * <p>
+     * 从引擎获取的ShaderBank只归还,其他实例还在使用时保留,最后一个使用者归还后由引擎释放
+     */
+    void release() {
+        // 不调用recycle,已经记录的绘制命令可能还引用着这个Bitmap
+        mStripBitmap = null;
+        mStripRow = null;
+        mRingBitmap = null;
+        mRingPixels = null;
+        mRuntimeShader = null;
+        if (mShaderBank != null) {
+            if (mShaderBankSource == BANK_ENGINE) {
+                NeonLightEngine.getInstance().releaseShaderBank(mShaderBank);
+                mShaderBank = null;
+            } else if (mShaderBankSource == BANK_OWNED) {
+                mShaderBank.clear();
+            }
+        }
+        mPaint.setShader(null);
+    }
+
+    static void checkRenderMode(int renderMode) {
+        if (renderMode != NeonLight.RENDER_MODE_SHADER && renderMode != NeonLight.RENDER_MODE_SPRITE
+                && renderMode != NeonLight.RENDER_MODE_STRIP && renderMode != NeonLight.RENDER_MODE_RUNTIME_SHADER) {
+            throw new IllegalArgumentException("Unknown render mode: " + renderMode);
+        }
+    }
+
+    /**
+     * @return 设置的渲染模式,系统不支持RuntimeShader或者canvas没有硬件加速时实际按{@link NeonLight#RENDER_MODE_SHADER}绘制
+     */
+    int getRenderMode() {
+        return mRenderMode;
+    }
+
+    /**
+     * 创建Shader和栅格化渐变条的累计次数,ShaderBank共享时包含其他实例创建的Shader
+     */
+    int getShaderAllocationCount() {
+        int bankAllocations = mShaderBank != null ? mShaderBank.allocationCount() : 0;
+        return bankAllocations + mSpriteAllocationCount + mRuntimeShaderAllocationCount;
+    }
+
+    /**
+     * 预先创建各个状态动画会用到的Shader,避免动画过程中再创建
+     */
+    void prewarm(Palette palette) {
+        shaderBank().prewarm(palette);
+    }
+
+    void draw(Canvas canvas, Frame frame, int width, int height) {
+        if (!frame.animating) {
+            if (frame.fillColor != 0) {
+                canvas.drawColor(frame.fillColor);
+            }
+            return;
+        }
+        if (mRenderMode == NeonLight.RENDER_MODE_STRIP && width > 0 && height > 0) {
+            drawStrip(canvas, frame, width, height);
+            return;
+        }
+        // RuntimeShader只能用于硬件加速的canvas,软件绘制时抛出异常,改用SHADER
+        if (mRenderMode == NeonLight.RENDER_MODE_RUNTIME_SHADER && LightRuntimeShader.isSupported()
+                && canvas.isHardwareAccelerated()) {
+            if (frame.pointCount > 0) {
+                drawRuntimeShader(canvas, frame, width, height);
+            }
+            return;
+        }
+        if (frame.split) {
+            int left = frame.centerX(0, width) < frame.centerX(1, width) ? 0 : 1;
+            int right = 1 - left;
+            float middle = frame.middleX(width);
+            drawPoint(canvas, frame, left, 0, width, height, 0, middle);
+            drawPoint(canvas, frame, right, 1, width, height, middle, width);
+        } else if (frame.pointCount > 0) {
+            drawPoint(canvas, frame, 0, 0, width, height, 0, width);
+        }
+    }
+
+    /**
+     * 计算中间一行的像素写入1像素高的Bitmap,再纵向拉伸到整个view
+     */
+    private void drawStrip(Canvas canvas, Frame frame, int width, int height) {
+        prepareStrip(width);
+        mStripRasterizer.drawRow(frame, width, 0.5f, mStripRow, 0);
+        drawStripRow(canvas, width, height);
+    }
+
+    /**
+     * 绘制光场,与渲染模式无关,总是按一行计算后纵向拉伸
+     */
+    void drawField(Canvas canvas, LightField field, Palette palette, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        prepareStrip(width);
+        mStripRasterizer.drawField(field, palette, width, mStripRow, 0);
+        drawStripRow(canvas, width, height);
+    }
+
+    /**
+     * 按环形排布绘制,与渲染模式无关
+     */
+    void drawRing(Canvas canvas, Frame frame, RingGeometry ring) {
+        prepareRing(ring);
+        ring.draw(mStripRasterizer, frame, mRingPixels);
+        drawRingBitmap(canvas, ring);
+    }
+
+    void drawRingField(Canvas canvas, LightField field, Palette palette, RingGeometry ring) {
+        prepareRing(ring);
+        ring.drawField(mStripRasterizer, field, palette, mRingPixels);
+        drawRingBitmap(canvas, ring);
+    }
+
+    /**
+     * 尺寸变化时重新创建,环带外的像素始终为透明
+     */
+    private void prepareRing(RingGeometry ring) {
+        int width = ring.getWidth();
+        int height = ring.getHeight();
+        if (mRingBitmap == null || mRingBitmap.getWidth() != width || mRingBitmap.getHeight() != height) {
+            if (mStripRasterizer == null) {
+                mStripRasterizer = new SoftwareRasterizer();
+            }
+            mRingPixels = new int[width * height];
+            mRingBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+    }
+
+    private void drawRingBitmap(Canvas canvas, RingGeometry ring) {
+        int width = ring.getWidth();
+        mRingBitmap.setPixels(mRingPixels, 0, width, 0, 0, width, ring.getHeight());
+        mPaint.setShader(null);
+        canvas.drawBitmap(mRingBitmap, 0, 0, mPaint);
+    }
+
+    private void prepareStrip(int width) {
+        if (mStripBitmap == null || mStripBitmap.getWidth() != width) {
+            if (mStripRasterizer == null) {
+                mStripRasterizer = new SoftwareRasterizer();
+            }
+            mStripRow = new int[width];
+            mStripBitmap = Bitmap.createBitmap(width, 1, Bitmap.Config.ARGB_8888);
+            mStripSrc.set(0, 0, width, 1);
+        }
+    }
+
+    private void drawStripRow(Canvas canvas, int width, int height) {
+        mStripBitmap.setPixels(mStripRow, 0, width, 0, 0, width, 1);
+        mStripDst.set(0, 0, width, height);
+        mPaint.setShader(null);
+        canvas.drawBitmap(mStripBitmap, mStripSrc, mStripDst, mPaint);
+    }
+
+    /**
+     * 一次drawRect绘制整个view,START状态的分割在着色器中完成
+     */
+    private void drawRuntimeShader(Canvas canvas, Frame frame, int width, int height) {
+        if (mRuntimeShader == null) {
+            mRuntimeShader = new LightRuntimeShader(Frame.EDGE_STOPS[0]);
+            mRuntimeShaderAllocationCount++;
+        }
+        mPaint.setShader(mRuntimeShader.update(frame, width, height));
+        canvas.drawRect(0, 0, width, height, mPaint);
+    }
+
+    /**
+     * 用第index个点的渐变填充[left, right]区间
+     * <p>
+     * Shader从{@link ShaderBank}中获取,以原点为圆心,半径为1.位置和半径通过canvas的变换调整,不修改Shader的local matrix:
+     * Android 8.0开始setLocalMatrix会丢弃Shader的native对象,下一次绘制时重新创建
+     */
+    private void drawPoint(Canvas canvas, Frame frame, int index, int slot, int width, int height, float left,
+            float right) {
+        if (mRenderMode == NeonLight.RENDER_MODE_SPRITE && width > 0 && height > 0
+                && frame.centerColor[index] >>> 24 == 0xFF) {
+            drawSprite(canvas, frame, index, width, height, left, right);
+            return;
+        }
+        float radius = frame.radius[index];
+        if (radius <= 0) {
+            // 没有渐变,整个区间都是边缘颜色
+            mFillPaint.setColor(frame.edgeColor[index]);
+            canvas.drawRect(left, 0, right, height, mFillPaint);
+            return;
+        }
+        float centerX = frame.centerX(index, width);
+        float centerY = height / 2;
+        float scale = 1 / radius;
+        mPaint.setShader(shaderBank().obtain(slot, frame.centerColor[index], frame.edgeColor[index]));
+        int count = canvas.save();
+        canvas.translate(centerX, centerY);
+        canvas.scale(radius, radius);
+        canvas.drawRect((left - centerX) * scale, -centerY * scale, (right - centerX) * scale,
+                (height - centerY) * scale, mPaint);
+        canvas.restoreToCount(count);
+    }
+
+    /**
+     * 使用渐变条缓存:先填充边缘颜色,再把用圆心颜色着色的遮罩叠加上去.遮罩以点的圆心为中心,canvas平移到圆心所在的位置
+     * <p>
+     * 圆心颜色不透明时叠加的透明度与渐变一致,半透明时叠加后比渐变更不透明,由调用方改用{@link ShaderBank}中的渐变
+     */
+    private void drawSprite(Canvas canvas, Frame frame, int index, int width, int height, float left,
+            float right) {
+        mFillPaint.setColor(frame.edgeColor[index]);
+        canvas.drawRect(left, 0, right, height, mFillPaint);
+        if (frame.radius[index] <= 0) {
+            return;
+        }
+        mSpriteKey.set(frame.radius[index], width, height);
+        GradientSpriteCache.Sprite sprite = mSpriteCache.obtain(mSpriteKey, Frame.EDGE_STOPS);
+        if (mSpriteKey.rasterized) {
+            mSpriteAllocationCount++;
+        }
+        float offsetX = frame.centerX(index, width) - sprite.halfWidth;
+        mSpritePaint.setShader(sprite.shader);
+        mSpritePaint.setColor(frame.centerColor[index]);
+        int count = canvas.save();
+        canvas.translate(offsetX, 0);
+        canvas.drawRect(left - offsetX, 0, right - offsetX, height, mSpritePaint);
+        canvas.restoreToCount(count);
+    }
+}
@@ -0,0 +1,93 @@
+package com.neonlight.demo;
+
+import android.graphics.RuntimeShader;
+import android.os.Build;
+
+/**
+ * Android 13开始可用的AGSL渲染
+ * <p>
+ * 整个view由一个RuntimeShader一次绘制,点的位置,半径和颜色都是uniform,每帧只更新uniform.
+ * START状态的两个点在着色器中按中线选择,不再分成两次drawRect.计算方式与{@link SoftwareRasterizer}逐项对应,
+ * 改动其中一个时需要同步修改另一个.只能在创建它的线程中使用.
+ */
+final class LightRuntimeShader {
+
+    /**
+     * 颜色以非预乘的[0, 1]分量传入,预乘后再插值,与SoftwareRasterizer和RadialGradient的插值方式相同;
+     * 插值权重与SoftwareRasterizer一样量化到1/256
+     */
+    private static final String SOURCE = ""
+            + "uniform float2 uCenterX;\n"
+            + "uniform float2 uRadius;\n"
+            + "uniform float uCenterY;\n"
+            + "uniform float uInnerStop;\n"
+            + "uniform float uSplit;\n"
+            + "uniform float uMiddle;\n"
+            + "uniform float uLeft;\n"
+            + "uniform float4 uCenterColor0;\n"
+            + "uniform float4 uEdgeColor0;\n"
+            + "uniform float4 uCenterColor1;\n"
+            + "uniform float4 uEdgeColor1;\n"
+            + "half4 main(float2 p) {\n"
+            + "    float index = 0.0;\n"
+            + "    if (uSplit > 0.5) {\n"
+            + "        index = p.x < uMiddle ? uLeft : 1.0 - uLeft;\n"
+            + "    }\n"
+            + "    float centerX = mix(uCenterX.x, uCenterX.y, index);\n"
+            + "    float radius = mix(uRadius.x, uRadius.y, index);\n"
+            + "    float inner = radius * uInnerStop;\n"
+            + "    float distance = length(float2(p.x - centerX, p.y - uCenterY));\n"
+            + "    float t = clamp((distance - inner) / max(radius - inner, 0.0001), 0.0, 1.0);\n"
+            + "    t = floor(t * 256.0) / 256.0;\n"
+            + "    float4 center = mix(uCenterColor0, uCenterColor1, index);\n"
+            + "    float4 edge = mix(uEdgeColor0, uEdgeColor1, index);\n"
+            + "    center = float4(center.rgb * center.a, center.a);\n"
+            + "    edge = float4(edge.rgb * edge.a, edge.a);\n"
+            + "    return half4(mix(center, edge, t));\n"
+            + "}\n";
+
+    private final RuntimeShader mShader;
+
+    private final float mInnerStop;
+
+    LightRuntimeShader(float innerStop) {
+        mShader = new RuntimeShader(SOURCE);
+        mInnerStop = innerStop;
+    }
+
+    static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU;
+    }
+
+    /**
+     * 按这一帧更新uniform,返回的Shader直接绘制整个view
+     */
+    RuntimeShader update(Frame frame, int width, int height) {
+        RuntimeShader shader = mShader;
+        int second = frame.pointCount > 1 ? 1 : 0;
+        shader.setFloatUniform("uCenterX", frame.centerX(0, width), frame.centerX(second, width));
+        shader.setFloatUniform("uRadius", frame.radius[0], frame.radius[second]);
+        shader.setFloatUniform("uCenterY", height / 2);
+        shader.setFloatUniform("uInnerStop", mInnerStop);
+        if (frame.split) {
+            shader.setFloatUniform("uSplit", 1);
+            shader.setFloatUniform("uMiddle", Math.round(frame.middleX(width)));
+            shader.setFloatUniform("uLeft", frame.centerX(0, width) < frame.centerX(1, width) ? 0 : 1);
+        } else {
+            shader.setFloatUniform("uSplit", 0);
+        }
+        setColor(shader, "uCenterColor0", frame.centerColor[0]);
+        setColor(shader, "uEdgeColor0", frame.edgeColor[0]);
+        setColor(shader, "uCenterColor1", frame.centerColor[second]);
+        setColor(shader, "uEdgeColor1", frame.edgeColor[second]);
+        return shader;
+    }
+
+    /**
+     * 不使用setColorUniform,避免颜色经过色彩空间转换后与其他渲染方式不一致
+     */
+    private static void setColor(RuntimeShader shader, String name, int color) {
+        shader.setFloatUniform(name, ((color >>> 16) & 0xFF) / 255f, ((color >>> 8) & 0xFF) / 255f,
+                (color & 0xFF) / 255f, (color >>> 24) / 255f);
+    }
+}
@@ -0,0 +1,582 @@
+package com.neonlight.demo;
+
+/**
+ * NeonLight的状态机
+ * <p>
+ * 根据{@link State},privacy和{@link Timeline}推进动画阶段并计算每一帧的{@link Frame},
+ * 不依赖View和时钟来源,由宿主在每一帧调用{@link #advance}.所有方法必须在同一个线程调用.
+ */
+final class LightStateMachine {
+
+    /**
+     * 音量驱动LISTENING时半径相对初始半径的范围,与默认时间轴的关键帧一致
+     */
+    static final float AUDIO_MIN_SCALE = 0.6f;
+    static final float AUDIO_MAX_SCALE = 1.1f;
+
+    /**
+     * 状态切换时从旧画面过渡到新阶段的时长
+     */
+    private static final long CROSSFADE_NANOS = 150000000L;
+
+    private final Frame mFrame = new Frame();
+
+    /**
+     * 宿主设置的时间轴,{@link #mTimeline}是它按当前配色绑定后的结果
+     */
+    private Timeline mSourceTimeline;
+
+    private Timeline mTimeline;
+
+    private Palette mPalette = Palette.DEFAULT;
+
+    private State mCurrentState = State.IDLE;
+
+    private State mLastState = State.IDLE;
+
+    private boolean isPrivacy;
+
+    private Phase mPhase = Phase.NONE;
+
+    private long mPhaseStartNanos = -1;
+
+    /**
+     * 进入新阶段,配色和尺寸变化,或者{@link #isCompositeAllowed}变化时递增,宿主据此判断{@link #planComposite}的结果是否过期
+     */
+    private int mPhaseSerial;
+
+    private float mBaseRadius;
+
+    private int mWidth;
+
+    private Listener mListener;
+
+    /**
+     * 外部音量,小于0表示没有音频输入,按时间轴播放
+     */
+    private float mAudioLevel = -1;
+
+    /**
+     * 交叉淡入的起点画面
+     */
+    private final Frame mBlendFrom = new Frame();
+
+    private boolean mBlending;
+
+    private long mBlendStartNanos;
+
+    LightStateMachine(Timeline timeline) {
+        mSourceTimeline = timeline;
+        mTimeline = timeline;
+    }
+
+    void setTimeline(Timeline timeline) {
+        mSourceTimeline = timeline;
+        mTimeline = mPalette.bind(timeline);
+    }
+
+    Timeline getTimeline() {
+        return mSourceTimeline;
+    }
+
+    /**
+     * 切换配色,从下一帧开始生效.同一组配色和时间轴只在第一次切换时烘焙
+     */
+    void setPalette(Palette palette) {
+        mPalette = palette;
+        mTimeline = palette.bind(mSourceTimeline);
+        mPhaseSerial++;
+        updateFill();
+    }
+
+    Palette getPalette() {
+        return mPalette;
+    }
+
+    /**
+     * 基准半径变化时按比例缩放当前的半径,START等没有半径track的阶段也跟着变化;
+     * 第一次布局之前进入的阶段半径为0,直接设为基准半径
+     *
+     * @param width      view宽度,UNIT_WIDTH的单位
+     * @param baseRadius 点的初始半径,UNIT_BASE_RADIUS的单位
+     */
+    void setSize(int width, float baseRadius) {
+        float oldBaseRadius = mBaseRadius;
+        mWidth = width;
+        mBaseRadius = baseRadius;
+        if (baseRadius != oldBaseRadius) {
+            rescaleRadius(mFrame, oldBaseRadius, baseRadius);
+            rescaleRadius(mBlendFrom, oldBaseRadius, baseRadius);
+        }
+        mPhaseSerial++;
+    }
+
+    private static void rescaleRadius(Frame frame, float from, float to) {
+        for (int i = 0; i < Frame.MAX_POINTS; i++) {
+            frame.radius[i] = from > 0 ? frame.radius[i] * to / from : to;
+        }
+    }
+
+    void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * 设置当前音量,在{@link #advance}之前调用.有音量时LISTENING的半径和SPEAKING的颜色由音量决定
+     *
+     * @param level [0, 1],小于0表示没有音频输入
+     */
+    void setAudioLevel(float level) {
+        if ((level < 0) != (mAudioLevel < 0)) {
+            mPhaseSerial++;
+        }
+        mAudioLevel = level;
+    }
+
+    Frame getFrame() {
+        return mFrame;
+    }
+
+    State getState() {
+        return mCurrentState;
+    }
+
+    boolean isPrivacy() {
+        return isPrivacy;
+    }
+
+    boolean isAnimationRunning() {
+        return mPhase != Phase.NONE;
+    }
+
+    int getPhaseSerial() {
+        return mPhaseSerial;
+    }
+
+    /**
+     * 音量和交叉淡入都会逐帧改变画面,这期间不能使用属性动画
+     */
+    boolean isCompositeAllowed() {
+        return mAudioLevel < 0 && !mBlending;
+    }
+
+    /**
+     * 判断当前阶段能否改为对固定画面做属性动画,在{@link #advance}之后调用
+     * <p>
+     * 只有一个点,并且只有一条随时间变化的track时才可能:FADE,或者只改变圆心颜色透明度且渐变边缘不在view内时对应alpha;
+     * 半径对应以圆心为轴心的scaleX,只有在按行绘制时结果才与原来一致.
+     *
+     * @param height  view高度
+     * @param rowOnly 是否只计算中间一行并纵向拉伸,即{@link NeonLight#RENDER_MODE_STRIP}
+     * @return 不能使用时返回null
+     */
+    CompositePlan planComposite(int height, boolean rowOnly) {
+        Timeline.Clip clip = mTimeline.getClip(mPhase);
+        if (clip == null || mPhaseStartNanos < 0 || !isCompositeAllowed() || mFrame.pointCount != 1
+                || mFrame.split) {
+            return null;
+        }
+        Timeline.Track dynamic = null;
+        for (Timeline.Track track : clip.tracks) {
+            if (track.isConstant()) {
+                continue;
+            }
+            if (dynamic != null) {
+                return null;
+            }
+            dynamic = track;
+        }
+        if (dynamic == null) {
+            return null;
+        }
+        int property;
+        switch (dynamic.target) {
+        case Timeline.TARGET_FADE:
+            property = CompositePlan.PROPERTY_ALPHA;
+            break;
+        case Timeline.TARGET_CENTER_COLOR:
+            if (dynamic.point != 0 || !dynamic.isAlphaOnly() || !isEdgeOutside(rowOnly ? 0 : height / 2f)) {
+                return null;
+            }
+            property = CompositePlan.PROPERTY_ALPHA;
+            break;
+        case Timeline.TARGET_RADIUS:
+            if (dynamic.point != 0 || !rowOnly) {
+                return null;
+            }
+            property = CompositePlan.PROPERTY_SCALE_X;
+            break;
+        default:
+            return null;
+        }
+        CompositePlan plan = new CompositePlan(clip.phase, property, clip.durationNanos,
+                clip.endAction == Timeline.END_LOOP,
+                mPhaseStartNanos, mFrame.centerX(0, mWidth));
+        float[] values = plan.values;
+        int baseIndex = 0;
+        for (int i = 0; i <= Timeline.SAMPLES; i++) {
+            float fraction = (float) i / Timeline.SAMPLES;
+            if (dynamic.target == Timeline.TARGET_CENTER_COLOR) {
+                values[i] = dynamic.colorAt(fraction) >>> 24;
+            } else if (dynamic.target == Timeline.TARGET_RADIUS) {
+                values[i] = dynamic.floatAt(fraction) * unitSize(dynamic.unit) + dynamic.offset;
+            } else {
+                values[i] = (int) dynamic.floatAt(fraction);
+            }
+            // 透明度以最不透明的一帧为基准,缩放以最小的半径为基准,保证只放大不缩小,不会露出view的边缘
+            boolean better = property == CompositePlan.PROPERTY_ALPHA ? values[i] > values[baseIndex]
+                    : values[i] < values[baseIndex];
+            if (better) {
+                baseIndex = i;
+            }
+        }
+        float baseValue = values[baseIndex];
+        if (baseValue <= 0) {
+            return null;
+        }
+        for (int i = 0; i <= Timeline.SAMPLES; i++) {
+            values[i] /= baseValue;
+        }
+        plan.base.copyFrom(mFrame);
+        applyClip(plan.base, clip, (float) baseIndex / Timeline.SAMPLES);
+        return plan;
+    }
+
+    /**
+     * 第一个点的渐变过渡带是否完全在view之外,这时整个view都是圆心颜色
+     *
+     * @param halfHeight 需要覆盖的半高
+     */
+    private boolean isEdgeOutside(float halfHeight) {
+        float inner = mFrame.radius[0] * Frame.EDGE_STOPS[0];
+        float centerX = mFrame.centerX(0, mWidth);
+        float dx = Math.max(centerX, mWidth - centerX);
+        return dx * dx + halfHeight * halfHeight <= inner * inner;
+    }
+
+    /**
+     * 推进到frameTimeNanos并计算这一帧
+     *
+     * @return 这一帧是否有变化需要重绘
+     */
+    boolean advance(long frameTimeNanos) {
+        Timeline.Clip clip = mTimeline.getClip(mPhase);
+        if (clip == null) {
+            mPhase = Phase.NONE;
+            updateFill();
+            return false;
+        }
+        if (mPhaseStartNanos < 0) {
+            mPhaseStartNanos = frameTimeNanos;
+        }
+        long elapsed = frameTimeNanos - mPhaseStartNanos;
+        if (elapsed < clip.durationNanos) {
+            applyClip(mFrame, clip, (float) elapsed / clip.durationNanos);
+        } else {
+            applyClip(mFrame, clip, 1f);
+            onPhaseEnd(clip, mPhaseStartNanos + clip.durationNanos);
+            // 进入的新阶段已经重置了点的参数,这一帧按新阶段的进度计算,否则循环时会闪一帧初始半径和颜色
+            Timeline.Clip next = mTimeline.getClip(mPhase);
+            if (next != null && mPhaseStartNanos >= 0) {
+                applyClip(mFrame, next, Math.min(1f, (float) (frameTimeNanos - mPhaseStartNanos) / next.durationNanos));
+            }
+        }
+        if (mAudioLevel >= 0) {
+            applyAudio(mAudioLevel);
+        }
+        if (mBlending) {
+            applyBlend(frameTimeNanos);
+        }
+        updateFill();
+        return true;
+    }
+
+    /**
+     * 时钟暂停后恢复时调用,阶段和过渡的开始时间后移暂停的时长,动画从暂停时的进度继续,不需要逐帧追赶
+     */
+    void shiftTime(long deltaNanos) {
+        if (mPhaseStartNanos >= 0) {
+            mPhaseStartNanos += deltaNanos;
+        }
+        if (mBlending && mBlendStartNanos >= 0) {
+            mBlendStartNanos += deltaNanos;
+        }
+    }
+
+    private void updateFill() {
+        mFrame.animating = mPhase != Phase.NONE;
+        mFrame.split = mCurrentState == State.START && mFrame.pointCount == 2;
+        if (isPrivacy) {
+            mFrame.fillColor = mPalette.getPrivacy();
+        } else if (mCurrentState == State.ERROR) {
+            mFrame.fillColor = mPalette.getError();
+        } else {
+            mFrame.fillColor = 0;
+        }
+    }
+
+    /**
+     * 进入新的阶段
+     *
+     * @param startNanos 阶段开始的时间,小于0时从下一帧开始
+     */
+    private void enterPhase(Phase phase, long startNanos) {
+        Timeline.Clip clip = mTimeline.getClip(phase);
+        if (clip == null) {
+            mPhase = Phase.NONE;
+            return;
+        }
+        if (clip.pointCount > 0) {
+            for (int i = 0; i < Frame.MAX_POINTS; i++) {
+                mFrame.resetPoint(i, mBaseRadius, mPalette.getForeground(), mPalette.getBackground());
+            }
+            mFrame.pointCount = clip.pointCount;
+        }
+        mPhase = phase;
+        mPhaseStartNanos = startNanos;
+        mPhaseSerial++;
+    }
+
+    /**
+     * 根据阶段的进度计算各个点的参数
+     *
+     * @param fraction 阶段的线性进度,[0, 1]
+     */
+    private void applyClip(Frame frame, Timeline.Clip clip, float fraction) {
+        for (Timeline.Track track : clip.tracks) {
+            int point = track.point;
+            switch (track.target) {
+            case Timeline.TARGET_POSITION:
+                frame.position[point] = track.floatAt(fraction);
+                break;
+            case Timeline.TARGET_RADIUS:
+                frame.radius[point] = track.floatAt(fraction) * unitSize(track.unit) + track.offset;
+                break;
+            case Timeline.TARGET_CENTER_COLOR:
+                frame.centerColor[point] = track.colorAt(fraction);
+                break;
+            case Timeline.TARGET_EDGE_COLOR:
+                frame.edgeColor[point] = track.colorAt(fraction);
+                break;
+            case Timeline.TARGET_FADE:
+                int alpha = (int) track.floatAt(fraction);
+                for (int i = 0; i < frame.pointCount; i++) {
+                    frame.centerColor[i] = Argb.withAlpha(frame.centerColor[i], alpha);
+                    frame.edgeColor[i] = Argb.withAlpha(frame.edgeColor[i], alpha);
+                }
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    /**
+     * 用音量代替时间轴上的半径和颜色,LISTENING在时间轴的半径范围内缩放,SPEAKING与原动画一样只改变颜色,从背景色过渡到前景色
+     */
+    private void applyAudio(float level) {
+        Frame frame = mFrame;
+        switch (mPhase) {
+        case LISTENING:
+            frame.radius[0] = mBaseRadius * (AUDIO_MIN_SCALE + (AUDIO_MAX_SCALE - AUDIO_MIN_SCALE) * level);
+            break;
+        case SPEAKING:
+        case SPEAKING_RECOVERY:
+            // 半径保持时间轴上的值,静音时只是退回背景色,不会缩成一个点
+            frame.centerColor[0] = mPalette.backgroundToForeground(level);
+            break;
+        default:
+            break;
+        }
+    }
+
+    private void applyBlend(long frameTimeNanos) {
+        if (mBlendStartNanos < 0) {
+            mBlendStartNanos = frameTimeNanos;
+        }
+        long elapsed = frameTimeNanos - mBlendStartNanos;
+        if (elapsed >= CROSSFADE_NANOS || mFrame.pointCount != mBlendFrom.pointCount) {
+            mBlending = false;
+            mPhaseSerial++;
+            return;
+        }
+        mFrame.blendFrom(mBlendFrom, (float) elapsed / CROSSFADE_NANOS);
+    }
+
+    private float unitSize(int unit) {
+        switch (unit) {
+        case Timeline.UNIT_BASE_RADIUS:
+            return mBaseRadius;
+        case Timeline.UNIT_WIDTH:
+            return mWidth;
+        default:
+            return 1;
+        }
+    }
+
+    /**
+     * 阶段结束,决定下一个阶段
+     *
+     * @param endNanos 阶段结束的时间,下一个阶段从这里开始,保证时间上连续
+     */
+    private void onPhaseEnd(Timeline.Clip clip, long endNanos) {
+        mPhase = Phase.NONE;
+        if ((clip.flags & Timeline.FLAG_RECOVER_ON_IDLE) != 0 && mCurrentState == State.IDLE) {
+            enterPhase(Phase.RECOVERY, endNanos);
+            return;
+        }
+        switch (clip.endAction) {
+        case Timeline.END_LOOP:
+            int serial = mPhaseSerial;
+            enterPhase(clip.phase, endNanos);
+            // 循环不算进入新的阶段
+            mPhaseSerial = serial;
+            break;
+        case Timeline.END_NEXT:
+            enterPhase(clip.next, endNanos);
+            break;
+        default:
+            if (clip.phase == Phase.RECOVERY && mCurrentState == State.IDLE && isPrivacy) {
+                enterPhase(Phase.PRIVACY, endNanos);
+            } else if (clip.phase == Phase.START && mListener != null) {
+                mListener.onStartAnimationEnd();
+            }
+            break;
+        }
+    }
+
+    void clearAnimation() {
+        mPhase = Phase.NONE;
+        mFrame.pointCount = 0;
+        mBlending = false;
+        updateFill();
+    }
+
+    void recoveryAnimation() {
+        if (mCurrentState == State.IDLE) {
+            enterPhase(Phase.RECOVERY, -1);
+        }
+    }
+
+    void startAnimation() {
+        clearAnimation();
+        if (mCurrentState == State.START) {
+            enterPhase(Phase.START, -1);
+        }
+    }
+
+    void listeningAnimation() {
+        clearAnimation();
+        if (mCurrentState == State.LISTENING) {
+            enterPhase(Phase.LISTENING, -1);
+        }
+    }
+
+    void thinkingAnimation() {
+        clearAnimation();
+        if (mCurrentState == State.THINKING || mCurrentState == State.IDLE) {
+            enterPhase(Phase.THINKING, -1);
+        }
+    }
+
+    void recoveryThinkingAnimation() {
+        clearAnimation();
+        if (mCurrentState == State.THINKING || mCurrentState == State.IDLE) {
+            enterPhase(Phase.THINKING_RECOVERY, -1);
+        }
+    }
+
+    void speakingAnimation() {
+        clearAnimation();
+        if (mCurrentState == State.SPEAKING || mCurrentState == State.IDLE) {
+            enterPhase(Phase.SPEAKING, -1);
+        }
+    }
+
+    void recoverySpeakingAnimation() {
+        clearAnimation();
+        if (mCurrentState == State.SPEAKING || mCurrentState == State.IDLE) {
+            enterPhase(Phase.SPEAKING_RECOVERY, -1);
+        }
+    }
+
+    void privacyAnimation() {
+        clearAnimation();
+        if (isPrivacy) {
+            enterPhase(Phase.PRIVACY, -1);
+        }
+    }
+
+    void errorAnimation() {
+        clearAnimation();
+        if (mCurrentState == State.ERROR) {
+            enterPhase(Phase.ERROR, -1);
+        }
+    }
+
+    void setPrivacy(boolean isPrivacy) {
+        this.isPrivacy = isPrivacy;
+        if (!isAnimationRunning()) {
+            if (isPrivacy) {
+                privacyAnimation();
+            } else {
+                updateFill();
+            }
+        }
+    }
+
+    /**
+     * 切换状态,状态之间的转换为:
+     * <ul>
+     * <li>任意状态到START:两个点从两端重新开始</li>
+     * <li>任意状态到LISTENING/THINKING/SPEAKING/ERROR:进入对应阶段</li>
+     * <li>START/ERROR到IDLE:立即淡出</li>
+     * <li>LISTENING/THINKING/SPEAKING到IDLE:当前这一轮结束后恢复</li>
+     * </ul>
+     * 切换前后都只有一个点时,新阶段从切换时的画面交叉淡入,而不是从头开始
+     */
+    void setState(State state) {
+        if (mCurrentState == state) {
+            return;
+        }
+        boolean wasAnimating = isAnimationRunning();
+        if (wasAnimating) {
+            mBlendFrom.copyFrom(mFrame);
+        }
+        this.mLastState = this.mCurrentState;
+        this.mCurrentState = state;
+        switch (mCurrentState) {
+        case IDLE:
+            if (mLastState == State.START || mLastState == State.ERROR) {
+                recoveryAnimation();
+            }
+            break;
+        case START:
+            startAnimation();
+            break;
+        case LISTENING:
+            listeningAnimation();
+            break;
+        case THINKING:
+            thinkingAnimation();
+            break;
+        case SPEAKING:
+            speakingAnimation();
+            break;
+        case ERROR:
+            errorAnimation();
+            break;
+        }
+        mBlending = wasAnimating && state != State.IDLE && isAnimationRunning()
+                && mBlendFrom.pointCount == 1 && mFrame.pointCount == 1;
+        mBlendStartNanos = -1;
+        updateFill();
+    }
+
+    /**
+     * 与{@link NeonLight.AnimationCallback}相同,单独定义使状态机不依赖View
+     */
+    interface Listener {
+        void onStartAnimationEnd();
+    }
+}
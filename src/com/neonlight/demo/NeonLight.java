@@ -1,70 +1,222 @@
 package com.neonlight.demo;
 
-import android.animation.Animator;
-import android.animation.Animator.AnimatorListener;
-import android.animation.ValueAnimator;
-import android.animation.ValueAnimator.AnimatorUpdateListener;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.PorterDuff.Mode;
-import android.graphics.RadialGradient;
-import android.graphics.Shader;
+import android.graphics.Rect;
+import android.os.Looper;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.View;
+import android.view.ViewParent;
 import android.view.WindowManager;
-import android.view.animation.AccelerateDecelerateInterpolator;
-import android.view.animation.AccelerateInterpolator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 
 public class NeonLight extends View {
 
+    private static final String TAG = "NeonLight";
+
     /**
      * 前景色
      */
-    public static final int COLOR_FOREGROUND = Color.argb(255, 0, 251, 251);
+    public static final int COLOR_FOREGROUND = LightColors.FOREGROUND;
     /**
      * 背景色
      */
-    public static final int COLOR_BACKGROUND = Color.argb(180, 31, 59, 251);
+    public static final int COLOR_BACKGROUND = LightColors.BACKGROUND;
     /**
      * 错误提示颜色
      */
-    public static final int COLOR_ERROR = Color.argb(200, 248, 162, 77);
+    public static final int COLOR_ERROR = LightColors.ERROR;
     /**
      * 麦克风关闭提示颜色
      */
-    public static final int COLOR_PRIVACY = Color.argb(200, 222, 38, 40);
+    public static final int COLOR_PRIVACY = LightColors.PRIVACY;
     /**
-     * 点的初始半径
+     * 渲染模式:每帧用RadialGradient计算整个view
+     */
+    public static final int RENDER_MODE_SHADER = 0;
+    /**
+     * 渲染模式:使用预先栅格化并缓存的渐变条Bitmap
+     */
+    public static final int RENDER_MODE_SPRITE = 1;
+    /**
+     * 渲染模式:每帧只计算中间一行像素,纵向拉伸铺满view,适合高度只有几dp的细条
+     */
+    public static final int RENDER_MODE_STRIP = 2;
+    /**
+     * 渲染模式:整个view由一个RuntimeShader绘制,每帧只更新uniform.Android 13以下或者软件绘制时自动使用{@link #RENDER_MODE_SHADER}
+     */
+    public static final int RENDER_MODE_RUNTIME_SHADER = 3;
+    /**
+     * 排布:横向的条形,位置从左到右,默认
+     */
+    public static final int GEOMETRY_BAR = 0;
+    /**
+     * 排布:贴着view内切圆的圆环,位置对应角度,0在正上方,顺时针增加
+     */
+    public static final int GEOMETRY_RING = 1;
+    /**
+     * 默认的点初始半径
+     */
+    static final int DEFAULT_POINT_RADIUS_DP = 120;
+    /**
+     * 默认的环带宽度与圆环外半径的比例
+     */
+    private static final float DEFAULT_RING_THICKNESS = 0.15f;
+    /**
+     * 点的初始半径,小于0表示还没有确定,第一次onSizeChanged时按默认值计算
+     */
+    private int mPointRadius = -1;
+    /**
+     * 帧坐标的长度,条形为宽度,环形为周长.在onSizeChanged之前为0
      */
-    private static int mPointRadius;
-    private Paint mPaint;
-
-    private float[] mEdgeStops;
-    private Point mPoint1;
-    private Point mPoint2;
-    private Point mLeftPoint;
-    private Point mRightPoint;
     private int mWidth;
 
-    private State mCurrentState = State.IDLE;
+    private int mGeometry = GEOMETRY_BAR;
+
+    /**
+     * 环带宽度(px),0表示按默认比例
+     */
+    private int mRingThickness;
+
+    /**
+     * 环形排布的查找表,条形时为null
+     */
+    private RingGeometry mRing;
+
+    /**
+     * 构造的时间和从构造到第一次绘制START状态的耗时
+     */
+    private final long mCreatedNanos = System.nanoTime();
+
+    private long mStartupLatencyNanos = -1;
+
+    private LightStateMachine mStateMachine;
+
+    private LightRenderer mRenderer;
+
+    private NeonLightEngine mEngine;
+
+    private NeonLightEngine.Client mClock;
+
+    private boolean mClockPosted;
+
+    /**
+     * 最近一次invalidate时的帧,用于判断新的一帧是否有可见的变化
+     */
+    private Frame mDrawnFrame;
+
+    private boolean mHasDrawnFrame;
+
+    private Rect mDirtyRect;
 
-    private State mLastState = State.IDLE;
+    private int mSkippedFrameCount;
 
-    private boolean isPrivacy;
+    private int mPartialFrameCount;
 
-    private RadialGradient mLeftRadialGradient;
+    /**
+     * 帧统计,未开启时为null
+     */
+    private NeonLightMetrics mMetrics;
 
-    private RadialGradient mRightRadialGradient;
+    private final AudioLevelMeter mAudioMeter = new AudioLevelMeter();
 
-    private ValueAnimator mCurrentAnimator;
+    /**
+     * 其他线程调用setState/setPrivacy时先放入队列,下一帧在UI线程生效
+     */
+    private final TransitionQueue mTransitions = new TransitionQueue();
 
-    private ValueAnimator mRecoveryAnimator;
+    private final Runnable mApplyTransitions = new Runnable() {
+        @Override
+        public void run() {
+            applyTransitions();
+        }
+    };
+
+    private volatile State mRequestedState = State.IDLE;
+
+    private volatile boolean mRequestedPrivacy;
+
+    /**
+     * 最近一次setState的时间,用于统计状态切换的延迟
+     */
+    private volatile long mTransitionRequestNanos;
 
-    private AnimationCallback mAnimationCallback;
+    private final FramePacer mPacer = new FramePacer();
+
+    /**
+     * 始终开启的事件记录,用于离线重放卡顿现场
+     */
+    private final TraceRecorder mTrace = new TraceRecorder(TraceRecorder.DEFAULT_CAPACITY);
+
+    /**
+     * 日间和夜间配色,跟随系统的夜间模式切换
+     */
+    private Palette mDayPalette;
+
+    private Palette mNightPalette;
+
+    /**
+     * 属性动画模式,关闭时不创建
+     */
+    private CompositeAnimator mComposite;
+
+    /**
+     * 最近一次尝试属性动画时状态机的阶段序号
+     */
+    private int mCompositeSerial = -1;
+
+    /**
+     * 最近一次setLightField的内容,可以在任意线程写入,用自身加锁
+     */
+    private final LightField mRequestedField = new LightField();
+
+    private boolean mFieldRequested;
+
+    /**
+     * 正在显示的光场,为null时显示状态动画.只在UI线程使用
+     */
+    private LightField mField;
+
+    /**
+     * 是否已经attach到window并且可见,否则暂停时钟
+     */
+    private boolean mAttached;
+
+    private boolean mClockAllowed;
+
+    /**
+     * 时钟暂停的时间,没有暂停过时为-1
+     */
+    private long mPausedNanos = -1;
+
+    /**
+     * attach期间注册到Application上,detach时注销
+     */
+    private final ComponentCallbacks2 mMemoryCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            NeonLight.this.onTrimMemory(level);
+        }
+
+        @Override
+        public void onLowMemory() {
+            NeonLight.this.onTrimMemory(TRIM_MEMORY_COMPLETE);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+    };
 
     public NeonLight(Context context) {
         this(context, null, 0, 0);
@@ -80,105 +232,633 @@ public class NeonLight extends View {
 
     public NeonLight(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
         super(context, attrs, defStyleAttr, defStyleRes);
-        mPointRadius = dp2px(context, 120);
-        mPaint = new Paint();
-        mEdgeStops = new float[] { 0.75f, 1.0f };
-        mWidth = getScreenWidth(context);
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.NeonLight, defStyleAttr, defStyleRes);
+        int timelineId = a.getResourceId(R.styleable.NeonLight_neonTimeline, 0);
+        Palette palette = readPalette(a);
+        a.recycle();
+        // xml中的颜色按当前的日间/夜间模式从values或values-night中解析,另一种模式的配色按对应的配置再解析一次
+        Palette other = null;
+        boolean night = isNight(getResources().getConfiguration());
+        if (palette != null) {
+            other = readPalette(context, attrs, defStyleAttr, defStyleRes, !night);
+        } else {
+            palette = Palette.DEFAULT;
+        }
+        if (other == null) {
+            other = palette;
+        }
+        // 尺寸,Shader和时钟都推迟到onSizeChanged或第一次使用时,预热在后台线程进行
+        NeonLightEngine.prewarmAsync();
+        mStateMachine = new LightStateMachine(timelineId != 0 ? loadTimeline(getResources(), timelineId)
+                : Timeline.getDefault());
+        mEngine = NeonLightEngine.getInstance();
+        mRenderer = new LightRenderer(null);
+        mDayPalette = night ? other : palette;
+        mNightPalette = night ? palette : other;
+        mStateMachine.setPalette(palette);
+        bindPalettes();
+        mDrawnFrame = new Frame();
+        mDirtyRect = new Rect();
         setBackgroundColor(Color.TRANSPARENT);
     }
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        mWidth = getMeasuredWidth();
+        if (mGeometry == GEOMETRY_BAR) {
+            mWidth = getMeasuredWidth();
+        }
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
     }
 
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        // 后台预热还没有完成时在这里等待它的ShaderBank,默认配色不会在UI线程重复预热.
+        // 另一种模式的配色也在这里预热,切换夜间模式时不在动画中途创建Shader
+        mRenderer.prewarm(mStateMachine.getPalette());
+        mRenderer.prewarm(mDayPalette);
+        mRenderer.prewarm(mNightPalette);
+        updateGeometry(w, h);
+    }
+
+    /**
+     * 按排布和尺寸更新帧坐标的长度,环形时重新计算查找表
+     */
+    private void updateGeometry(int width, int height) {
+        if (mGeometry == GEOMETRY_RING && width > 0 && height > 0) {
+            float thickness = mRingThickness > 0 ? mRingThickness
+                    : Math.min(width, height) / 2f * DEFAULT_RING_THICKNESS;
+            mRing = new RingGeometry(width, height, thickness);
+            mWidth = mRing.getLength();
+        } else {
+            mRing = null;
+            mWidth = width;
+        }
+        mStateMachine.setSize(mWidth, getPointRadius());
+        recordSize();
+        mHasDrawnFrame = false;
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
-        if (isAnimationRunning()) {
-            if (mCurrentState == State.START) {
-                if (mLeftPoint != null && mRightPoint != null) {
-                    mPaint.setShader(mLeftRadialGradient);
-                    canvas.drawRect(0, 0, (mLeftPoint.getCenterX(mWidth) + mRightPoint.getCenterX(mWidth)) / 2,
-                            getHeight(), mPaint);
-                    mPaint.setShader(mRightRadialGradient);
-                    canvas.drawRect((mLeftPoint.getCenterX(mWidth) + mRightPoint.getCenterX(mWidth)) / 2, 0, mWidth,
-                            getHeight(), mPaint);
-                }
-            } else {
-                mPaint.setShader(mLeftRadialGradient);
-                canvas.drawRect(0, 0, getWidth(), getHeight(), mPaint);
-            }
+        NeonLightMetrics metrics = mMetrics;
+        long start = System.nanoTime();
+        syncLightField();
+        if (mField != null && mRing != null) {
+            mRenderer.drawRingField(canvas, mField, mStateMachine.getPalette(), mRing);
+        } else if (mField != null) {
+            mRenderer.drawField(canvas, mField, mStateMachine.getPalette(), mWidth, getHeight());
         } else {
-            if (isPrivacy) {
-                canvas.drawColor(COLOR_PRIVACY);
-            } else if (mCurrentState == State.ERROR) {
-                canvas.drawColor(COLOR_ERROR);
+            CompositePlan plan = mComposite != null ? mComposite.getPlan() : null;
+            Frame frame = plan != null ? plan.base : mStateMachine.getFrame();
+            if (mRing != null) {
+                mRenderer.drawRing(canvas, frame, mRing);
+            } else {
+                mRenderer.draw(canvas, frame, mWidth, getHeight());
             }
         }
+        long end = System.nanoTime();
+        mTrace.record(TraceRecorder.EVENT_DRAW, (int) ((end - start) / 1000), end);
+        if (mStartupLatencyNanos < 0 && mStateMachine.getState() == State.START) {
+            mStartupLatencyNanos = end - mCreatedNanos;
+        }
+        if (metrics != null) {
+            metrics.recordDraw(mStateMachine.getState(), start, end);
+        }
         super.onDraw(canvas);
     }
 
+    /**
+     * 背景透明,每一帧只画一层互不重叠的渐变,alpha小于1时直接按alpha绘制,不需要离屏缓冲
+     */
+    @Override
+    public boolean hasOverlappingRendering() {
+        return false;
+    }
+
+    /**
+     * 取出最近一次设置的光场,光场开始显示时停止属性动画
+     */
+    private void syncLightField() {
+        synchronized (mRequestedField) {
+            if (!mFieldRequested) {
+                if (mField != null) {
+                    mField = null;
+                    mHasDrawnFrame = false;
+                    mCompositeSerial = -1;
+                }
+                return;
+            }
+            if (mField == null) {
+                mField = new LightField();
+            }
+            mField.copyFrom(mRequestedField);
+        }
+        cancelComposite();
+    }
+
+    /**
+     * 主时钟,由{@link NeonLightEngine}每一帧回调一次
+     *
+     * @return 是否需要下一帧
+     */
+    private boolean onClockFrame(long frameTimeNanos) {
+        if (mMetrics != null) {
+            mMetrics.recordClockFrame(frameTimeNanos);
+        }
+        if (!mPacer.shouldRender(mStateMachine.getState(), frameTimeNanos)) {
+            return true;
+        }
+        float audioLevel = mAudioMeter.isActive(System.nanoTime()) ? mAudioMeter.getLevel() : -1;
+        mTrace.record(TraceRecorder.EVENT_FRAME,
+                audioLevel < 0 ? TraceRecorder.NO_AUDIO : Math.round(audioLevel * 1000), frameTimeNanos);
+        mStateMachine.setAudioLevel(audioLevel);
+        if (mStateMachine.advance(frameTimeNanos)) {
+            mPacer.onRendered(frameTimeNanos, !updateComposite(frameTimeNanos) && refresh());
+        }
+        if (mStateMachine.isAnimationRunning()) {
+            return true;
+        }
+        mClockPosted = false;
+        mTrace.record(TraceRecorder.EVENT_CLOCK_STOP, 0);
+        if (mMetrics != null) {
+            mMetrics.recordClockStopped();
+        }
+        return false;
+    }
+
+    /**
+     * 当前阶段能用属性动画表达时启动或者保持属性动画,否则取消并回到逐帧绘制
+     *
+     * @return 这一帧是否由属性动画负责,不需要invalidate
+     */
+    private boolean updateComposite(long frameTimeNanos) {
+        if (mComposite == null || mField != null) {
+            return false;
+        }
+        CompositePlan plan = mComposite.getPlan();
+        int serial = mStateMachine.getPhaseSerial();
+        if (plan != null && serial == mCompositeSerial && mStateMachine.isAnimationRunning()
+                && mStateMachine.isCompositeAllowed()) {
+            if (mComposite.isExpired(frameTimeNanos)) {
+                mComposite.start(plan, frameTimeNanos);
+            }
+            return true;
+        }
+        cancelComposite();
+        if (serial == mCompositeSerial) {
+            return false;
+        }
+        mCompositeSerial = serial;
+        plan = mStateMachine.planComposite(getHeight(),
+                mRing == null && mRenderer.getRenderMode() == RENDER_MODE_STRIP);
+        if (plan == null || plan.property == CompositePlan.PROPERTY_SCALE_X && !spansParent()) {
+            return false;
+        }
+        mComposite.start(plan, frameTimeNanos);
+        // 固定画面只绘制这一次
+        invalidate();
+        return true;
+    }
+
+    private void cancelComposite() {
+        if (mComposite != null && mComposite.getPlan() != null) {
+            mComposite.cancel();
+            mHasDrawnFrame = false;
+        }
+    }
+
+    /**
+     * 横向缩放会画到view之外,只有view横向铺满父view时超出的部分才会被裁掉
+     */
+    private boolean spansParent() {
+        ViewParent parent = getParent();
+        return parent instanceof View && getLeft() <= 0 && getRight() >= ((View) parent).getWidth();
+    }
+
+    private void postClock() {
+        if (!mClockPosted && mClockAllowed) {
+            if (mClock == null) {
+                mClock = new NeonLightEngine.Client() {
+                    @Override
+                    public boolean onEngineFrame(long frameTimeNanos) {
+                        return onClockFrame(frameTimeNanos);
+                    }
+                };
+            }
+            mClockPosted = true;
+            mTrace.record(TraceRecorder.EVENT_CLOCK_START, 0);
+            mEngine.schedule(mClock);
+        }
+    }
+
+    private void stopClock() {
+        if (mClockPosted) {
+            mEngine.unschedule(mClock);
+            mClockPosted = false;
+            mTrace.record(TraceRecorder.EVENT_CLOCK_STOP, 0);
+        }
+        if (mMetrics != null) {
+            mMetrics.recordClockStopped();
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mAttached = true;
+        getContext().getApplicationContext().registerComponentCallbacks(mMemoryCallbacks);
+        applyTransitions();
+        updateClockAllowed();
+    }
+
+    /**
+     * 停止时钟,注销所有注册到外部的回调并释放这个view自己的Bitmap和Shader,引擎和Application不再持有这个view
+     */
+    @Override
+    protected void onDetachedFromWindow() {
+        mAttached = false;
+        updateClockAllowed();
+        removeCallbacks(mApplyTransitions);
+        getContext().getApplicationContext().unregisterComponentCallbacks(mMemoryCallbacks);
+        mRenderer.release();
+        cancelComposite();
+        mCompositeSerial = -1;
+        mHasDrawnFrame = false;
+        super.onDetachedFromWindow();
+    }
+
+    /**
+     * 内存紧张时释放缓存,之后绘制时按需重新创建
+     */
+    private void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            GradientSpriteCache.getInstance().evictAll();
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mRenderer.release();
+            mHasDrawnFrame = false;
+        }
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updateClockAllowed();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateClockAllowed();
+    }
+
+    /**
+     * 不可见,被其他window覆盖或者detach后暂停时钟,恢复后动画从暂停时的进度继续
+     */
+    private void updateClockAllowed() {
+        if (mStateMachine == null) {
+            // 父类构造函数中回调
+            return;
+        }
+        boolean allowed = mAttached && getWindowVisibility() == VISIBLE && isShown();
+        if (allowed == mClockAllowed) {
+            return;
+        }
+        mClockAllowed = allowed;
+        if (!allowed) {
+            mPausedNanos = System.nanoTime();
+            mTrace.record(TraceRecorder.EVENT_PAUSE, 0, mPausedNanos);
+            stopClock();
+            return;
+        }
+        if (mPausedNanos >= 0) {
+            long now = System.nanoTime();
+            mStateMachine.shiftTime(now - mPausedNanos);
+            mTrace.record(TraceRecorder.EVENT_SHIFT, 0, now);
+            mPausedNanos = -1;
+            // 属性动画按暂停前的开始时间计算,重新规划
+            cancelComposite();
+            mCompositeSerial = -1;
+        }
+        if (mStateMachine.isAnimationRunning()) {
+            mPacer.reset();
+            mHasDrawnFrame = false;
+            postClock();
+        }
+    }
+
+    /**
+     * 状态机有变化后调用,需要动画时启动时钟,否则直接重绘静止的画面
+     */
+    private void onStateMachineChanged() {
+        mPacer.reset();
+        if (mStateMachine.isAnimationRunning()) {
+            postClock();
+        } else {
+            stopClock();
+            cancelComposite();
+            mHasDrawnFrame = false;
+            refresh();
+        }
+    }
+
     /**
      * 刷新view,会调用invalidate
+     * <p>
+     * 与上一次invalidate的帧相比没有可见变化时跳过.软件绘制时START只有一侧变化则只invalidate那一半,
+     * 硬件加速时invalidate(Rect)与invalidate()一样会重新录制整个view,不做区分
      *
+     * @return 是否有可见变化
      * @auther qujq
      * @time 2017/3/10
      */
-    private void refresh() {
-        if (mCurrentState == State.START) {
-            if (mPoint1 != null && mPoint2 != null) {
-                if (mPoint1.getCenterX(mWidth) < mPoint2.getCenterX(mWidth)) {
-                    mLeftPoint = mPoint1;
-                    mRightPoint = mPoint2;
-                } else {
-                    mLeftPoint = mPoint2;
-                    mRightPoint = mPoint1;
-                }
-                mLeftRadialGradient = new RadialGradient(mLeftPoint.getCenterX(mWidth), getHeight() / 2,
-                        mLeftPoint.radius, mLeftPoint.colors, mEdgeStops, Shader.TileMode.CLAMP);
-
-                mRightRadialGradient = new RadialGradient(mRightPoint.getCenterX(mWidth), getHeight() / 2,
-                        mRightPoint.radius, mRightPoint.colors, mEdgeStops, Shader.TileMode.CLAMP);
+    private boolean refresh() {
+        if (mField != null) {
+            // 光场显示期间状态动画不绘制
+            return false;
+        }
+        Frame frame = mStateMachine.getFrame();
+        if (mMetrics != null) {
+            mMetrics.recordRefresh();
+        }
+        int changed = mHasDrawnFrame ? frame.diff(mDrawnFrame, mWidth) : Frame.CHANGED_ALL;
+        if (changed == 0) {
+            mSkippedFrameCount++;
+            if (mMetrics != null) {
+                mMetrics.recordSkippedFrame();
             }
-        } else {
-            if (mPoint1 != null) {
-                mLeftPoint = mPoint1;
-                mLeftRadialGradient = new RadialGradient(mLeftPoint.getCenterX(mWidth), getHeight() / 2,
-                        mLeftPoint.radius, mLeftPoint.colors, mEdgeStops, Shader.TileMode.CLAMP);
+            return false;
+        }
+        if (mRing == null && frame.split && (changed == 1 || changed == 2) && !isHardwareAccelerated()
+                && frame.sameMiddle(mDrawnFrame, mWidth)) {
+            int index = changed == 1 ? 0 : 1;
+            int middle = (int) frame.middleX(mWidth);
+            if (frame.centerX(index, mWidth) < frame.centerX(1 - index, mWidth)) {
+                mDirtyRect.set(0, 0, middle + 1, getHeight());
+            } else {
+                mDirtyRect.set(middle, 0, mWidth, getHeight());
+            }
+            mPartialFrameCount++;
+            if (mMetrics != null) {
+                mMetrics.recordPartialFrame();
             }
+            invalidatePartial(mDirtyRect);
+        } else {
+            invalidate();
         }
+        mDrawnFrame.copyFrom(frame);
+        mHasDrawnFrame = true;
+        return true;
+    }
+
+    /**
+     * invalidate(Rect)从API 28开始废弃,因为硬件加速时总是重绘整个view.这里只在软件绘制时调用,局部重绘仍然有效
+     */
+    @SuppressWarnings("deprecation")
+    private void invalidatePartial(Rect dirty) {
+        invalidate(dirty);
+    }
+
+    /**
+     * 因为没有可见变化而跳过invalidate的帧数
+     */
+    public int getSkippedFrameCount() {
+        return mSkippedFrameCount;
+    }
+
+    /**
+     * 只invalidate了一半区域的帧数,只在软件绘制时统计
+     */
+    public int getPartialFrameCount() {
+        return mPartialFrameCount;
+    }
+
+    /**
+     * 输入麦克风或播放的16位PCM数据,LISTENING和SPEAKING会随音量变化,停止输入后恢复原来的动画
+     * <p>
+     * 可以在录音线程调用,不会阻塞也不分配对象,但只能由同一个线程调用
+     *
+     * @param pcm    单声道16位PCM
+     * @param length 有效的采样数
+     */
+    public void feedAudio(short[] pcm, int length) {
+        mAudioMeter.write(pcm, length);
+    }
+
+    /**
+     * 直接输入已经计算好的音量,可以在任意线程调用
+     *
+     * @param level [0, 1]
+     */
+    public void feedAudioLevel(float level) {
+        mAudioMeter.writeLevel(level);
+    }
+
+    /**
+     * 设置{@link #feedAudio}数据的采样率,默认16000
+     */
+    public void setAudioSampleRate(int sampleRate) {
+        mAudioMeter.setSampleRate(sampleRate);
+    }
+
+    /**
+     * 设置某个状态的最高帧率
+     *
+     * @param frameRate 小于等于0表示不限制
+     */
+    public void setMaxFrameRate(State state, int frameRate) {
+        mPacer.setMaxFrameRate(state, frameRate);
+    }
+
+    public int getMaxFrameRate(State state) {
+        return mPacer.getMaxFrameRate(state);
+    }
+
+    /**
+     * 因为帧率限制或者画面基本静止而跳过的帧数
+     */
+    public int getSavedFrameCount() {
+        return mPacer.getSavedFrameCount();
+    }
+
+    /**
+     * 设置点的初始半径,每个实例可以不同
+     *
+     * @param radius 像素
+     */
+    public void setPointRadius(int radius) {
+        mPointRadius = radius;
+        mStateMachine.setSize(mWidth, mPointRadius);
+        recordSize();
+        mHasDrawnFrame = false;
+    }
+
+    public int getPointRadius() {
+        if (mPointRadius < 0) {
+            mPointRadius = dp2px(getContext(), DEFAULT_POINT_RADIUS_DP);
+        }
+        return mPointRadius;
+    }
+
+    /**
+     * 从构造到第一次绘制START状态的耗时,用于冷启动的测量
+     *
+     * @return 还没有绘制过START状态时返回-1
+     */
+    public long getStartupLatencyNanos() {
+        return mStartupLatencyNanos;
+    }
+
+    /**
+     * 提前在后台线程预热,可以在Application.onCreate中调用,第一个NeonLight创建时也会自动开始
+     */
+    public static void prewarm() {
+        NeonLightEngine.prewarmAsync();
+    }
+
+    /**
+     * 开启或关闭帧统计,关闭时丢弃已有的数据
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        if (enabled && mMetrics == null) {
+            mMetrics = new NeonLightMetrics();
+            mMetrics.setRenderer(mRenderer);
+        } else if (!enabled) {
+            mMetrics = null;
+        }
+    }
+
+    /**
+     * @return 帧统计,未开启时返回null
+     */
+    public NeonLightMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * 设置渲染模式
+     *
+     * @param renderMode {@link #RENDER_MODE_SHADER},{@link #RENDER_MODE_SPRITE},{@link #RENDER_MODE_STRIP}
+     *                   或{@link #RENDER_MODE_RUNTIME_SHADER}
+     */
+    public void setRenderMode(int renderMode) {
+        mRenderer.setRenderMode(renderMode);
+    }
+
+    public int getRenderMode() {
+        return mRenderer.getRenderMode();
+    }
+
+    /**
+     * 设置排布
+     * <p>
+     * 环形时状态动画和光场都沿圆环显示,点的半径是沿圆环的弧长,通常需要用{@link #setPointRadius}设置得比条形小.
+     * 环形总是在CPU上计算后绘制一张Bitmap,不受渲染模式影响
+     *
+     * @param geometry {@link #GEOMETRY_BAR}或{@link #GEOMETRY_RING}
+     */
+    public void setGeometry(int geometry) {
+        if (geometry != GEOMETRY_BAR && geometry != GEOMETRY_RING) {
+            throw new IllegalArgumentException("Unknown geometry: " + geometry);
+        }
+        if (geometry == mGeometry) {
+            return;
+        }
+        mGeometry = geometry;
+        updateGeometry(getWidth(), getHeight());
         invalidate();
     }
 
+    public int getGeometry() {
+        return mGeometry;
+    }
+
+    /**
+     * 设置环形排布的环带宽度
+     *
+     * @param thickness 像素,0表示使用默认值
+     */
+    public void setRingThickness(int thickness) {
+        mRingThickness = Math.max(0, thickness);
+        if (mRing != null) {
+            updateGeometry(getWidth(), getHeight());
+            invalidate();
+        }
+    }
+
+    /**
+     * 设置是否使用属性动画模式
+     * <p>
+     * 开启后,只改变透明度的阶段(RECOVERY的淡出,ERROR/PRIVACY的淡入)只绘制一次,由alpha属性动画完成;
+     * {@link #RENDER_MODE_STRIP}下只改变半径的阶段(LISTENING)由scaleX完成.属性动画仍然在UI线程上推进,UI线程卡住时同样会停,
+     * 但每帧只修改RenderNode的属性,不需要重新录制和光栅化.其他阶段,以及有音量输入和状态切换淡入期间,仍然逐帧绘制.
+     * 开启期间view的alpha,scaleX和pivotX由NeonLight控制
+     */
+    public void setCompositeAnimationEnabled(boolean enabled) {
+        if (enabled == (mComposite != null)) {
+            return;
+        }
+        if (enabled) {
+            mComposite = new CompositeAnimator(this);
+        } else {
+            cancelComposite();
+            mComposite = null;
+            refresh();
+        }
+        mCompositeSerial = -1;
+    }
+
+    public boolean isCompositeAnimationEnabled() {
+        return mComposite != null;
+    }
+
+    /**
+     * 渐变条缓存的字节上限,所有NeonLight共享
+     */
+    public static void setSpriteCacheSize(int maxBytes) {
+        GradientSpriteCache.getInstance().resize(maxBytes);
+    }
+
+    /**
+     * 渐变条缓存命中次数
+     */
+    public static int getSpriteCacheHitCount() {
+        return GradientSpriteCache.getInstance().hitCount();
+    }
+
+    /**
+     * 渐变条缓存未命中次数
+     */
+    public static int getSpriteCacheMissCount() {
+        return GradientSpriteCache.getInstance().missCount();
+    }
+
+    /**
+     * 渐变条缓存淘汰次数
+     */
+    public static int getSpriteCacheEvictionCount() {
+        return GradientSpriteCache.getInstance().evictionCount();
+    }
+
     /**
      * 判断当前是否在执行动画
      *
      * @return
      */
     public boolean isAnimationRunning() {
-        if ((mCurrentAnimator != null && mCurrentAnimator.isRunning())
-                || (mRecoveryAnimator != null && mRecoveryAnimator.isRunning())) {
-            return true;
-        } else {
-            return false;
-        }
+        return mStateMachine.isAnimationRunning();
     }
 
     /**
-     * 设置是否为Privacy
+     * 设置是否为Privacy,可以在任意线程调用,不在UI线程时下一帧生效
      *
      * @param isPrivacy
      */
     public void setPrivacy(boolean isPrivacy) {
-        this.isPrivacy = isPrivacy;
-        if (!isAnimationRunning()) {
-            if (isPrivacy) {
-                privacyAnimation();
-            } else {
-                invalidate();
-            }
-        }
+        mRequestedPrivacy = isPrivacy;
+        mTrace.record(TraceRecorder.EVENT_REQUEST_PRIVACY, isPrivacy ? 1 : 0);
+        onTransitionOffered(mTransitions.offerPrivacy(isPrivacy));
     }
 
     /**
@@ -187,28 +867,149 @@ public class NeonLight extends View {
      * @return
      */
     public boolean isPrivacy() {
-        return isPrivacy;
+        return mRequestedPrivacy;
+    }
+
+    /**
+     * 设置动画时间轴,从下一个阶段开始生效
+     */
+    public void setTimeline(Timeline timeline) {
+        mStateMachine.setTimeline(timeline != null ? timeline : Timeline.getDefault());
+        bindPalettes();
+    }
+
+    public Timeline getTimeline() {
+        return mStateMachine.getTimeline();
+    }
+
+    /**
+     * 设置配色,日间和夜间模式使用同一套
+     */
+    public void setPalette(Palette palette) {
+        setPalettes(palette, palette);
+    }
+
+    /**
+     * 分别设置日间和夜间模式的配色
+     * <p>
+     * 两套配色在这里预先绑定时间轴并预热Shader,之后系统切换夜间模式时只需要切换引用
+     */
+    public void setPalettes(Palette day, Palette night) {
+        mDayPalette = day != null ? day : Palette.DEFAULT;
+        mNightPalette = night != null ? night : mDayPalette;
+        bindPalettes();
+        mRenderer.prewarm(mNightPalette);
+        mRenderer.prewarm(mDayPalette);
+        applyPalette(getResources().getConfiguration());
+    }
+
+    /**
+     * 日间和夜间的配色都按当前时间轴烘焙,当前没有使用的一套在切换模式时直接取缓存
+     */
+    private void bindPalettes() {
+        Timeline timeline = mStateMachine.getTimeline();
+        mDayPalette.bind(timeline);
+        mNightPalette.bind(timeline);
+    }
+
+    /**
+     * @return 当前生效的配色
+     */
+    public Palette getPalette() {
+        return mStateMachine.getPalette();
     }
 
-    static class Point {
-        private float pos;
-        private float radius = mPointRadius;
+    /**
+     * 显示光场代替状态动画,可以在任意线程调用
+     * <p>
+     * 内容在调用时复制,之后修改field需要再次调用才会显示,同一帧内的多次调用只有最后一次生效.
+     * 光场显示期间状态照常切换,设置为null后回到当前状态的动画.
+     */
+    public void setLightField(LightField field) {
+        synchronized (mRequestedField) {
+            mFieldRequested = field != null;
+            if (field != null) {
+                mRequestedField.copyFrom(field);
+            }
+        }
+        postInvalidateOnAnimation();
+    }
 
-        int[] colors = new int[] { COLOR_FOREGROUND, COLOR_BACKGROUND };
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        applyPalette(newConfig);
+    }
 
-        public Point(float pos) {
-            this.pos = pos;
+    private void applyPalette(Configuration config) {
+        Palette palette = isNight(config) ? mNightPalette : mDayPalette;
+        if (palette == mStateMachine.getPalette()) {
+            return;
         }
+        mStateMachine.setPalette(palette);
+        onStateMachineChanged();
+    }
 
-        public float getCenterX(float width) {
-            return width * pos;
+    /**
+     * 读取xml中的颜色属性,{@link NeonLightSurface}共用
+     *
+     * @return 没有设置任何颜色时返回null
+     */
+    static Palette readPalette(TypedArray a) {
+        if (!a.hasValue(R.styleable.NeonLight_neonForegroundColor) && !a.hasValue(R.styleable.NeonLight_neonBackgroundColor)
+                && !a.hasValue(R.styleable.NeonLight_neonErrorColor) && !a.hasValue(R.styleable.NeonLight_neonPrivacyColor)) {
+            return null;
         }
+        return new Palette(a.getColor(R.styleable.NeonLight_neonForegroundColor, COLOR_FOREGROUND),
+                a.getColor(R.styleable.NeonLight_neonBackgroundColor, COLOR_BACKGROUND),
+                a.getColor(R.styleable.NeonLight_neonErrorColor, COLOR_ERROR),
+                a.getColor(R.styleable.NeonLight_neonPrivacyColor, COLOR_PRIVACY));
+    }
 
-        @Override
-        public String toString() {
-            return "[Point]{ pos=" + pos + ",radius=" + radius + " }";
+    /**
+     * 按指定的日间/夜间模式重新读取xml中的颜色属性,引用的颜色资源从values或values-night中解析
+     * <p>
+     * 用切换了夜间模式的配置创建context,再把当前的theme复制过去,style中的颜色也按这个配置解析
+     */
+    private static Palette readPalette(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes,
+            boolean night) {
+        Configuration config = new Configuration(context.getResources().getConfiguration());
+        config.uiMode = (config.uiMode & ~Configuration.UI_MODE_NIGHT_MASK)
+                | (night ? Configuration.UI_MODE_NIGHT_YES : Configuration.UI_MODE_NIGHT_NO);
+        Resources.Theme theme = context.createConfigurationContext(config).getResources().newTheme();
+        theme.setTo(context.getTheme());
+        TypedArray a = theme.obtainStyledAttributes(attrs, R.styleable.NeonLight, defStyleAttr, defStyleRes);
+        try {
+            return readPalette(a);
+        } finally {
+            a.recycle();
         }
+    }
+
+    private static boolean isNight(Configuration config) {
+        return (config.uiMode & Configuration.UI_MODE_NIGHT_MASK) == Configuration.UI_MODE_NIGHT_YES;
+    }
 
+    /**
+     * 读取xml中neonTimeline指定的时间轴,读取失败时使用默认时间轴
+     */
+    static Timeline loadTimeline(Resources res, int resId) {
+        InputStream in = null;
+        try {
+            in = res.openRawResource(resId);
+            return Timeline.read(in);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to load timeline, use default", e);
+            return Timeline.getDefault();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
     }
 
     /**
@@ -218,24 +1019,9 @@ public class NeonLight extends View {
      * @time 2017/3/10
      */
     public void clearAnimation() {
-        if (mRecoveryAnimator != null) {
-            if (mRecoveryAnimator.isRunning()) {
-                mRecoveryAnimator.cancel();
-            }
-            mRecoveryAnimator.removeAllUpdateListeners();
-            mRecoveryAnimator.removeAllListeners();
-        }
-        if (mCurrentAnimator != null) {
-            if (mCurrentAnimator.isRunning()) {
-                mCurrentAnimator.cancel();
-            }
-            mCurrentAnimator.removeAllUpdateListeners();
-            mCurrentAnimator.removeAllListeners();
-        }
-        mLeftPoint = null;
-        mRightPoint = null;
-        mPoint1 = null;
-        mPoint2 = null;
+        mStateMachine.clearAnimation();
+        mTrace.record(TraceRecorder.EVENT_CLEAR, 0);
+        onStateMachineChanged();
     }
 
     /**
@@ -245,53 +1031,9 @@ public class NeonLight extends View {
      * @time 2017/3/24
      */
     public void recoveryAnimation() {
-        mCurrentAnimator = ValueAnimator.ofInt(255);
-        mCurrentAnimator.setDuration(200);
-        mCurrentAnimator.setInterpolator(new AccelerateInterpolator());
-        mCurrentAnimator.addUpdateListener(new AnimatorUpdateListener() {
-
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                if (mCurrentState == State.IDLE) {
-                    int val = (Integer) animation.getAnimatedValue();
-                    if (mPoint1 != null) {
-                        mPoint1.colors[0] = changeAlpha(mPoint1.colors[0], 255 - val);
-                        mPoint1.colors[1] = changeAlpha(mPoint1.colors[1], 255 - val);
-                    }
-                    if (mPoint2 != null) {
-                        mPoint2.colors[0] = changeAlpha(mPoint2.colors[0], 255 - val);
-                        mPoint2.colors[1] = changeAlpha(mPoint2.colors[1], 255 - val);
-                    }
-                    refresh();
-                }
-            }
-        });
-        mCurrentAnimator.addListener(new AnimatorListener() {
-            @Override
-            public void onAnimationStart(Animator animator) {
-
-            }
-
-            @Override
-            public void onAnimationEnd(Animator animator) {
-                if (mCurrentState == State.IDLE && isPrivacy) {
-                    privacyAnimation();
-                }
-            }
-
-            @Override
-            public void onAnimationCancel(Animator animator) {
-
-            }
-
-            @Override
-            public void onAnimationRepeat(Animator animator) {
-
-            }
-        });
-        if (mCurrentState == State.IDLE) {
-            mCurrentAnimator.start();
-        }
+        mStateMachine.recoveryAnimation();
+        mTrace.record(TraceRecorder.EVENT_ANIMATION, Phase.RECOVERY.ordinal());
+        onStateMachineChanged();
     }
 
     /**
@@ -301,51 +1043,9 @@ public class NeonLight extends View {
      * @time 2017/3/10
      */
     public void startAnimation() {
-        clearAnimation();
-        mPoint1 = new Point(0);
-        mPoint2 = new Point(1);
-        mCurrentAnimator = ValueAnimator.ofFloat(0.5f);
-        mCurrentAnimator.setDuration(1000);
-        mCurrentAnimator.setInterpolator(new AccelerateDecelerateInterpolator());
-        mCurrentAnimator.addUpdateListener(new AnimatorUpdateListener() {
-
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                if (mCurrentState == State.START || mCurrentState == State.IDLE && mPoint1 != null && mPoint2 != null) {
-                    float val = (Float) animation.getAnimatedValue();
-                    mPoint1.pos = val;
-                    mPoint2.pos = 1 - val;
-                    refresh();
-                }
-            }
-        });
-        mCurrentAnimator.addListener(new AnimatorListener() {
-
-            @Override
-            public void onAnimationStart(Animator animation) {
-
-            }
-
-            @Override
-            public void onAnimationRepeat(Animator animation) {
-
-            }
-
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                if (mAnimationCallback != null) {
-                    mAnimationCallback.onStartAnimationEnd();
-                }
-            }
-
-            @Override
-            public void onAnimationCancel(Animator animation) {
-
-            }
-        });
-        if (mCurrentState == State.START) {
-            mCurrentAnimator.start();
-        }
+        mStateMachine.startAnimation();
+        mTrace.record(TraceRecorder.EVENT_ANIMATION, Phase.START.ordinal());
+        onStateMachineChanged();
     }
 
     /**
@@ -355,50 +1055,9 @@ public class NeonLight extends View {
      * @time 2017/3/10
      */
     public void listeningAnimation() {
-        clearAnimation();
-        mPoint1 = new Point(0.5f);
-        mCurrentAnimator = ValueAnimator.ofFloat(1.0f, 0.7f, 1.0f, 0.7f, 1.1f, 0.6f, 0.8f, 1.0f, 0.7f, 1.0f);
-        mCurrentAnimator.setDuration(1200);
-        mCurrentAnimator.setRepeatCount(ValueAnimator.INFINITE);
-        mCurrentAnimator.setInterpolator(new AccelerateInterpolator());
-        mCurrentAnimator.addUpdateListener(new AnimatorUpdateListener() {
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                if (mCurrentState == State.LISTENING || mCurrentState == State.IDLE && mPoint1 != null) {
-                    float f = (Float) animation.getAnimatedValue();
-                    mPoint1.radius = mPointRadius * f;
-                    refresh();
-                }
-            }
-        });
-        mCurrentAnimator.addListener(new AnimatorListener() {
-            @Override
-            public void onAnimationStart(Animator animator) {
-
-            }
-
-            @Override
-            public void onAnimationEnd(Animator animator) {
-
-            }
-
-            @Override
-            public void onAnimationCancel(Animator animator) {
-
-            }
-
-            @Override
-            public void onAnimationRepeat(Animator animator) {
-                if (mCurrentState == State.IDLE) {
-                    mCurrentAnimator.cancel();
-                    recoveryAnimation();
-                }
-            }
-        });
-        if (mCurrentState == State.LISTENING) {
-            mCurrentAnimator.start();
-        }
-
+        mStateMachine.listeningAnimation();
+        mTrace.record(TraceRecorder.EVENT_ANIMATION, Phase.LISTENING.ordinal());
+        onStateMachineChanged();
     }
 
     /**
@@ -408,58 +1067,9 @@ public class NeonLight extends View {
      * @time 2017/3/10
      */
     public void thinkingAnimation() {
-        clearAnimation();
-        mPoint1 = new Point(0.5f);
-        mCurrentAnimator = ValueAnimator.ofInt(mWidth);
-        mCurrentAnimator.setDuration(700);
-        mCurrentAnimator.setInterpolator(new AccelerateInterpolator());
-        mCurrentAnimator.addUpdateListener(new AnimatorUpdateListener() {
-
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                if (mCurrentState == State.THINKING || mCurrentState == State.IDLE && mPoint1 != null) {
-                    int val = (Integer) animation.getAnimatedValue();
-                    mPoint1.radius = val + 100;
-                    int alpha = (int) (255.0 * val / mWidth) + 100;
-                    if (alpha > 255) {
-                        alpha = 255;
-                    }
-                    mPoint1.colors[0] = changeAlpha(COLOR_FOREGROUND, alpha);
-                    refresh();
-                }
-            }
-        });
-
-        mCurrentAnimator.addListener(new AnimatorListener() {
-
-            @Override
-            public void onAnimationStart(Animator animation) {
-
-            }
-
-            @Override
-            public void onAnimationRepeat(Animator animation) {
-
-            }
-
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                if (mCurrentState == State.IDLE) {
-                    recoveryAnimation();
-                } else if (mCurrentState == State.THINKING) {
-                    recoveryThinkingAnimation();
-                }
-            }
-
-            @Override
-            public void onAnimationCancel(Animator animation) {
-
-            }
-        });
-        if (mCurrentState == State.THINKING || mCurrentState == State.IDLE) {
-            mCurrentAnimator.start();
-        }
-
+        mStateMachine.thinkingAnimation();
+        mTrace.record(TraceRecorder.EVENT_ANIMATION, Phase.THINKING.ordinal());
+        onStateMachineChanged();
     }
 
     /**
@@ -469,47 +1079,9 @@ public class NeonLight extends View {
      * @time 2017/3/10
      */
     public void recoveryThinkingAnimation() {
-        clearAnimation();
-        mPoint1 = new Point(0.5f);
-        mPoint1.radius = mWidth;
-        mRecoveryAnimator = ValueAnimator.ofArgb(NeonLight.COLOR_FOREGROUND, NeonLight.COLOR_BACKGROUND);
-        mRecoveryAnimator.setDuration(200);
-        mRecoveryAnimator.addUpdateListener(new AnimatorUpdateListener() {
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                if (mCurrentState == State.THINKING || mCurrentState == State.IDLE && mPoint1 != null) {
-                    int color = (Integer) animation.getAnimatedValue();
-                    mPoint1.colors[0] = color;
-                    refresh();
-                }
-            }
-        });
-        mRecoveryAnimator.addListener(new AnimatorListener() {
-
-            @Override
-            public void onAnimationStart(Animator animation) {
-
-            }
-
-            @Override
-            public void onAnimationRepeat(Animator animation) {
-
-            }
-
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                thinkingAnimation();
-            }
-
-            @Override
-            public void onAnimationCancel(Animator animation) {
-
-            }
-        });
-        if (mCurrentState == State.THINKING || mCurrentState == State.IDLE) {
-            mRecoveryAnimator.start();
-        }
-
+        mStateMachine.recoveryThinkingAnimation();
+        mTrace.record(TraceRecorder.EVENT_ANIMATION, Phase.THINKING_RECOVERY.ordinal());
+        onStateMachineChanged();
     }
 
     /**
@@ -519,52 +1091,9 @@ public class NeonLight extends View {
      * @time 2017/3/10
      */
     public void speakingAnimation() {
-        clearAnimation();
-        mPoint1 = new Point(0.5f);
-        mPoint1.radius = mWidth;
-        mCurrentAnimator = ValueAnimator.ofArgb(NeonLight.COLOR_BACKGROUND, NeonLight.COLOR_FOREGROUND);
-        mCurrentAnimator.setDuration(700);
-        mCurrentAnimator.setInterpolator(new AccelerateInterpolator());
-        mCurrentAnimator.addUpdateListener(new AnimatorUpdateListener() {
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                if (mCurrentState == State.SPEAKING || mCurrentState == State.IDLE && mPoint1 != null) {
-                    int color = (Integer) animation.getAnimatedValue();
-                    mPoint1.colors[0] = color;
-                    refresh();
-                }
-            }
-        });
-
-        mCurrentAnimator.addListener(new AnimatorListener() {
-
-            @Override
-            public void onAnimationStart(Animator animation) {
-
-            }
-
-            @Override
-            public void onAnimationRepeat(Animator animation) {
-
-            }
-
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                if (mCurrentState == State.IDLE) {
-                    recoveryAnimation();
-                } else if (mCurrentState == State.SPEAKING) {
-                    recoverySpeakingAnimation();
-                }
-            }
-
-            @Override
-            public void onAnimationCancel(Animator animation) {
-
-            }
-        });
-        if (mCurrentState == State.SPEAKING || mCurrentState == State.IDLE) {
-            mCurrentAnimator.start();
-        }
+        mStateMachine.speakingAnimation();
+        mTrace.record(TraceRecorder.EVENT_ANIMATION, Phase.SPEAKING.ordinal());
+        onStateMachineChanged();
     }
 
     /**
@@ -574,46 +1103,9 @@ public class NeonLight extends View {
      * @time 2017/3/10
      */
     public void recoverySpeakingAnimation() {
-        clearAnimation();
-        mPoint1 = new Point(0.5f);
-        mPoint1.radius = mWidth;
-        mRecoveryAnimator = ValueAnimator.ofArgb(NeonLight.COLOR_FOREGROUND, NeonLight.COLOR_BACKGROUND);
-        mRecoveryAnimator.setDuration(700);
-        mRecoveryAnimator.addUpdateListener(new AnimatorUpdateListener() {
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                if (mCurrentState == State.SPEAKING || mCurrentState == State.IDLE && mPoint1 != null) {
-                    int color = (Integer) animation.getAnimatedValue();
-                    mPoint1.colors[0] = color;
-                    refresh();
-                }
-            }
-        });
-        mRecoveryAnimator.addListener(new AnimatorListener() {
-
-            @Override
-            public void onAnimationStart(Animator animation) {
-
-            }
-
-            @Override
-            public void onAnimationRepeat(Animator animation) {
-
-            }
-
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                speakingAnimation();
-            }
-
-            @Override
-            public void onAnimationCancel(Animator animation) {
-
-            }
-        });
-        if (mCurrentState == State.SPEAKING || mCurrentState == State.IDLE) {
-            mRecoveryAnimator.start();
-        }
+        mStateMachine.recoverySpeakingAnimation();
+        mTrace.record(TraceRecorder.EVENT_ANIMATION, Phase.SPEAKING_RECOVERY.ordinal());
+        onStateMachineChanged();
     }
 
     /**
@@ -623,26 +1115,9 @@ public class NeonLight extends View {
      * @time 2017/3/10
      */
     public void privacyAnimation() {
-        clearAnimation();
-        mPoint1 = new Point(0.5f);
-        mPoint1.radius = mWidth;
-        mCurrentAnimator = ValueAnimator.ofInt(255);
-        mCurrentAnimator.setDuration(300);
-        mCurrentAnimator.setInterpolator(new AccelerateInterpolator());
-        mCurrentAnimator.addUpdateListener(new AnimatorUpdateListener() {
-
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                if (isPrivacy || mCurrentState == State.IDLE && mPoint1 != null) {
-                    int alpha = (Integer) animation.getAnimatedValue();
-                    mPoint1.colors[0] = changeAlpha(COLOR_PRIVACY, alpha);
-                    refresh();
-                }
-            }
-        });
-        if (isPrivacy) {
-            mCurrentAnimator.start();
-        }
+        mStateMachine.privacyAnimation();
+        mTrace.record(TraceRecorder.EVENT_ANIMATION, Phase.PRIVACY.ordinal());
+        onStateMachineChanged();
     }
 
     /**
@@ -652,26 +1127,9 @@ public class NeonLight extends View {
      * @time 2017/3/10
      */
     public void errorAnimation() {
-        clearAnimation();
-        mPoint1 = new Point(0.5f);
-        mPoint1.radius = mWidth;
-        mCurrentAnimator = ValueAnimator.ofInt(255);
-        mCurrentAnimator.setDuration(300);
-        mCurrentAnimator.setInterpolator(new AccelerateInterpolator());
-        mCurrentAnimator.addUpdateListener(new AnimatorUpdateListener() {
-
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                if (mCurrentState == State.ERROR || mCurrentState == State.IDLE && mPoint1 != null) {
-                    int alpha = (Integer) animation.getAnimatedValue();
-                    mPoint1.colors[0] = changeAlpha(COLOR_ERROR, alpha);
-                    refresh();
-                }
-            }
-        });
-        if (mCurrentState == State.ERROR) {
-            mCurrentAnimator.start();
-        }
+        mStateMachine.errorAnimation();
+        mTrace.record(TraceRecorder.EVENT_ANIMATION, Phase.ERROR.ordinal());
+        onStateMachineChanged();
     }
 
     /**
@@ -681,33 +1139,75 @@ public class NeonLight extends View {
      * @time 2017/3/10
      */
     public void setState(State state) {
-        if (mCurrentState == state) {
+        mRequestedState = state;
+        mTransitionRequestNanos = System.nanoTime();
+        mTrace.record(TraceRecorder.EVENT_REQUEST_STATE, state.ordinal(), mTransitionRequestNanos);
+        onTransitionOffered(mTransitions.offerState(state));
+    }
+
+    /**
+     * @return 最近一次设置的状态,其他线程设置的状态可能还没有生效
+     */
+    public State getState() {
+        return mRequestedState;
+    }
+
+    /**
+     * UI线程上立即生效,其他线程上在队列由空变为非空时安排到下一帧生效,之后的变化在此之前合并
+     */
+    private void onTransitionOffered(boolean wasEmpty) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            applyTransitions();
+        } else if (wasEmpty) {
+            postOnAnimation(mApplyTransitions);
+        }
+    }
+
+    private void applyTransitions() {
+        int drained = mTransitions.drain();
+        if (drained == TransitionQueue.EMPTY) {
             return;
         }
-        this.mLastState = this.mCurrentState;
-        this.mCurrentState = state;
-        switch (mCurrentState) {
-        case IDLE:
-            if (mLastState == State.START || mLastState == State.ERROR) {
-                recoveryAnimation();
+        State state = TransitionQueue.stateOf(drained);
+        if (state != null && state != mStateMachine.getState()) {
+            if (mMetrics != null) {
+                mMetrics.recordTransition(mTransitionRequestNanos);
             }
-            break;
-        case START:
-            startAnimation();
-            break;
-        case LISTENING:
-            listeningAnimation();
-            break;
-        case THINKING:
-            thinkingAnimation();
-            break;
-        case SPEAKING:
-            speakingAnimation();
-            break;
-        case ERROR:
-            errorAnimation();
-            break;
+            mStateMachine.setState(state);
+            mTrace.record(TraceRecorder.EVENT_APPLY_STATE, state.ordinal());
+        }
+        if (TransitionQueue.hasPrivacy(drained)) {
+            boolean isPrivacy = TransitionQueue.privacyOf(drained);
+            mStateMachine.setPrivacy(isPrivacy);
+            mTrace.record(TraceRecorder.EVENT_APPLY_PRIVACY, isPrivacy ? 1 : 0);
         }
+        onStateMachineChanged();
+    }
+
+    private void recordSize() {
+        mTrace.record(TraceRecorder.EVENT_WIDTH, mWidth);
+        mTrace.record(TraceRecorder.EVENT_BASE_RADIUS, mPointRadius);
+    }
+
+    /**
+     * 把最近的事件记录写到文件,用{@link TraceReplayer}在JVM上重放
+     * <p>
+     * 记录始终开启,保留最近{@value TraceRecorder#DEFAULT_CAPACITY}个事件:状态切换的请求和生效,动画的开始和清除,
+     * 时钟的每一帧,暂停恢复和每次绘制的耗时.可以在任意线程调用
+     *
+     * @return 写出的事件数
+     */
+    public int flushTrace(File file) throws IOException {
+        // 保证记录中至少有一次当前的尺寸
+        recordSize();
+        return mTrace.flush(file);
+    }
+
+    /**
+     * 被后来的变化覆盖而没有生效的setState/setPrivacy次数
+     */
+    public int getCoalescedTransitionCount() {
+        return mTransitions.getCoalescedCount();
     }
 
     /**
@@ -717,10 +1217,7 @@ public class NeonLight extends View {
      * @time 2017/3/10
      */
     public int changeAlpha(int color, int alpha) {
-        int red = Color.red(color);
-        int green = Color.green(color);
-        int blue = Color.blue(color);
-        return Color.argb(alpha, red, green, blue);
+        return Argb.withAlpha(color, alpha);
     }
 
     /**
@@ -747,8 +1244,13 @@ public class NeonLight extends View {
         return metric.widthPixels;
     }
 
-    public void setAnimationCallback(AnimationCallback callback) {
-        mAnimationCallback = callback;
+    public void setAnimationCallback(final AnimationCallback callback) {
+        mStateMachine.setListener(callback == null ? null : new LightStateMachine.Listener() {
+            @Override
+            public void onStartAnimationEnd() {
+                callback.onStartAnimationEnd();
+            }
+        });
     }
 
     public interface AnimationCallback {
@@ -0,0 +1,255 @@
+package com.neonlight.demo;
+
+import android.view.Choreographer;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * UI线程上所有NeonLight共用的动画引擎
+ * <p>
+ * 所有正在动画的实例由同一个帧回调驱动,在同一个vsync里依次计算并invalidate,由同一次遍历完成绘制.
+ * 同时提供实例间共享的Shader缓存.只能在UI线程使用.
+ * <p>
+ * 引擎是进程内的单例,只持有client的弱引用,即使宿主忘记移除也不会让view无法回收.
+ */
+final class NeonLightEngine implements Choreographer.FrameCallback {
+
+    private static NeonLightEngine sInstance;
+
+    /**
+     * 后台预热时使用的宽度,只影响预热的计算量
+     */
+    private static final int PREWARM_WIDTH = 1080;
+
+    private static final AtomicBoolean sPrewarmStarted = new AtomicBoolean();
+
+    /**
+     * 后台线程创建并预热好的ShaderBank,由第一个需要的view取走
+     */
+    private static final AtomicReference<ShaderBank> sPrewarmedShaderBank = new AtomicReference<ShaderBank>();
+
+    /**
+     * 后台预热的ShaderBank就绪后打开
+     */
+    private static final CountDownLatch sShaderBankPrewarmed = new CountDownLatch(1);
+
+    /**
+     * 回调过程中移除的位置先置为null,回调结束后再压缩
+     */
+    private final ArrayList<WeakReference<Client>> mClients = new ArrayList<WeakReference<Client>>();
+
+    private boolean mFramePosted;
+
+    private boolean mDispatching;
+
+    private ShaderBank mSharedShaderBank;
+
+    /**
+     * 持有共享ShaderBank的实例数,归零时释放
+     */
+    private int mShaderBankUsers;
+
+    interface Client {
+        /**
+         * @return 是否还需要下一帧
+         */
+        boolean onEngineFrame(long frameTimeNanos);
+    }
+
+    private NeonLightEngine() {
+    }
+
+    static NeonLightEngine getInstance() {
+        if (sInstance == null) {
+            sInstance = new NeonLightEngine();
+        }
+        return sInstance;
+    }
+
+    /**
+     * 从下一帧开始回调client,直到它返回false或者被移除
+     */
+    void schedule(Client client) {
+        if (indexOf(client) < 0) {
+            mClients.add(new WeakReference<Client>(client));
+        }
+        if (!mFramePosted) {
+            mFramePosted = true;
+            // 不缓存Choreographer,引擎是进程内的单例,Robolectric在测试之间会重建UI线程的Choreographer
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    void unschedule(Client client) {
+        int index = indexOf(client);
+        if (index < 0) {
+            return;
+        }
+        if (mDispatching) {
+            mClients.set(index, null);
+        } else {
+            mClients.remove(index);
+        }
+    }
+
+    int getClientCount() {
+        return mClients.size();
+    }
+
+    private int indexOf(Client client) {
+        for (int i = 0; i < mClients.size(); i++) {
+            WeakReference<Client> reference = mClients.get(i);
+            if (reference != null && reference.get() == client) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mFramePosted = false;
+        mDispatching = true;
+        // 回调过程中新加入的client从下一帧开始
+        int count = mClients.size();
+        for (int i = 0; i < count; i++) {
+            WeakReference<Client> reference = mClients.get(i);
+            Client client = reference != null ? reference.get() : null;
+            if (client == null || !client.onEngineFrame(frameTimeNanos)) {
+                mClients.set(i, null);
+            }
+        }
+        mDispatching = false;
+        int kept = 0;
+        for (int i = 0; i < mClients.size(); i++) {
+            WeakReference<Client> reference = mClients.get(i);
+            if (reference != null && reference.get() != null) {
+                mClients.set(kept++, reference);
+            }
+        }
+        for (int i = mClients.size() - 1; i >= kept; i--) {
+            mClients.remove(i);
+        }
+        if (kept > 0 && !mFramePosted) {
+            mFramePosted = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * 获取所有实例共享的ShaderBank
+     * <p>
+     * Shader是以原点为圆心,半径为1的渐变,位置和半径由绘制时canvas的变换决定,Shader本身不会被修改,
+     * 各个API版本都可以在多个view之间共享
+     *
+     * @return 不再使用时调用{@link #releaseShaderBank}
+     */
+    ShaderBank obtainShaderBank(float[] stops) {
+        if (mSharedShaderBank == null) {
+            mSharedShaderBank = takeShaderBank(stops);
+        }
+        mShaderBankUsers++;
+        return mSharedShaderBank;
+    }
+
+    /**
+     * 归还{@link #obtainShaderBank}获取的ShaderBank,最后一个使用者归还后释放
+     */
+    void releaseShaderBank(ShaderBank shaderBank) {
+        if (shaderBank == mSharedShaderBank && --mShaderBankUsers == 0) {
+            mSharedShaderBank = null;
+        }
+    }
+
+    ShaderBank getSharedShaderBank() {
+        return mSharedShaderBank;
+    }
+
+    int getShaderBankUserCount() {
+        return mShaderBankUsers;
+    }
+
+    /**
+     * 取走后台预热好的实例,已经被取走或者没有开始预热时新建
+     * <p>
+     * 后台还在预热时等待它完成:剩下的工作量一定少于在这里重新预热一遍
+     */
+    private static ShaderBank takeShaderBank(float[] stops) {
+        if (stops == Frame.EDGE_STOPS) {
+            if (sPrewarmStarted.get()) {
+                awaitShaderBankPrewarmed();
+            }
+            ShaderBank prewarmed = sPrewarmedShaderBank.getAndSet(null);
+            if (prewarmed != null) {
+                return prewarmed;
+            }
+        }
+        return new ShaderBank(stops);
+    }
+
+    private static void awaitShaderBankPrewarmed() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                sShaderBankPrewarmed.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 在后台线程预热,只执行一次
+     * <p>
+     * 先按默认配色创建好一个ShaderBank,UI线程需要时可能在等待它;再加载默认时间轴,
+     * 让状态机和光栅化的代码在各个状态下各执行几帧,完成类加载和初始化.第一次setState和第一帧不再承担这些开销
+     */
+    static void prewarmAsync() {
+        if (!sPrewarmStarted.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                prewarm();
+            }
+        }, "NeonLight-prewarm");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void prewarm() {
+        try {
+            ShaderBank shaderBank = new ShaderBank(Frame.EDGE_STOPS);
+            shaderBank.prewarm(Palette.DEFAULT);
+            sPrewarmedShaderBank.set(shaderBank);
+        } finally {
+            sShaderBankPrewarmed.countDown();
+        }
+        LightStateMachine stateMachine = new LightStateMachine(Timeline.getDefault());
+        stateMachine.setSize(PREWARM_WIDTH, PREWARM_WIDTH / 3f);
+        Frame drawn = new Frame();
+        SoftwareRasterizer rasterizer = new SoftwareRasterizer();
+        int[] row = new int[PREWARM_WIDTH];
+        long frameTimeNanos = 0;
+        for (State state : State.values()) {
+            stateMachine.setState(state);
+            for (int i = 0; i < 8; i++) {
+                frameTimeNanos += 16666667L;
+                stateMachine.advance(frameTimeNanos);
+                stateMachine.getFrame().diff(drawn, PREWARM_WIDTH);
+                drawn.copyFrom(stateMachine.getFrame());
+                rasterizer.drawRow(drawn, PREWARM_WIDTH, 0.5f, row, 0);
+            }
+        }
+        new TransitionQueue().drain();
+    }
+}
@@ -0,0 +1,296 @@
+package com.neonlight.demo;
+
+/**
+ * NeonLight的帧统计
+ * <p>
+ * 通过{@link NeonLight#setMetricsEnabled}开启.记录只做数组和计数器的累加,不分配对象,可以在线上一直开启.
+ * 耗时使用固定内存的对数分桶直方图,每个2的幂区间分16个桶,精度约6%.
+ * 记录和{@link #snapshot(Snapshot)}都应该在UI线程调用.
+ */
+public final class NeonLightMetrics {
+
+    /**
+     * 两帧间隔超过这个值认为掉帧,即错过了至少一个60Hz的vsync
+     */
+    static final long JANK_INTERVAL_NANOS = 16600000L * 3 / 2;
+
+    private static final int STATE_COUNT = State.values().length;
+
+    private final int[] mFrameCounts = new int[STATE_COUNT];
+
+    private final Histogram[] mDrawTimes = new Histogram[STATE_COUNT];
+
+    private final Histogram mTransitionLatency = new Histogram();
+
+    private int mRefreshCount;
+
+    private int mDrawCount;
+
+    private int mSkippedFrameCount;
+
+    private int mPartialFrameCount;
+
+    private int mJankyFrameCount;
+
+    private long mLastFrameTimeNanos;
+
+    /**
+     * 最近一次setState的时间,0表示已经画出了状态变化后的第一帧
+     */
+    private long mTransitionStartNanos;
+
+    private LightRenderer mRenderer;
+
+    NeonLightMetrics() {
+        for (int i = 0; i < STATE_COUNT; i++) {
+            mDrawTimes[i] = new Histogram();
+        }
+    }
+
+    void setRenderer(LightRenderer renderer) {
+        mRenderer = renderer;
+    }
+
+    void recordClockFrame(long frameTimeNanos) {
+        if (mLastFrameTimeNanos != 0 && frameTimeNanos - mLastFrameTimeNanos > JANK_INTERVAL_NANOS) {
+            mJankyFrameCount++;
+        }
+        mLastFrameTimeNanos = frameTimeNanos;
+    }
+
+    /**
+     * 动画停止后调用,下一次开始时不把停止期间算作掉帧
+     */
+    void recordClockStopped() {
+        mLastFrameTimeNanos = 0;
+    }
+
+    void recordRefresh() {
+        mRefreshCount++;
+    }
+
+    void recordSkippedFrame() {
+        mSkippedFrameCount++;
+    }
+
+    void recordPartialFrame() {
+        mPartialFrameCount++;
+    }
+
+    void recordTransition(long nowNanos) {
+        mTransitionStartNanos = nowNanos;
+    }
+
+    void recordDraw(State state, long startNanos, long endNanos) {
+        mDrawCount++;
+        mFrameCounts[state.ordinal()]++;
+        mDrawTimes[state.ordinal()].record((endNanos - startNanos) / 1000);
+        if (mTransitionStartNanos != 0) {
+            mTransitionLatency.record((endNanos - mTransitionStartNanos) / 1000);
+            mTransitionStartNanos = 0;
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < STATE_COUNT; i++) {
+            mFrameCounts[i] = 0;
+            mDrawTimes[i].clear();
+        }
+        mTransitionLatency.clear();
+        mRefreshCount = 0;
+        mDrawCount = 0;
+        mSkippedFrameCount = 0;
+        mPartialFrameCount = 0;
+        mJankyFrameCount = 0;
+        mLastFrameTimeNanos = 0;
+        mTransitionStartNanos = 0;
+    }
+
+    /**
+     * 把当前的统计复制到out中,out可以重复使用
+     */
+    public void snapshot(Snapshot out) {
+        for (int i = 0; i < STATE_COUNT; i++) {
+            out.frameCounts[i] = mFrameCounts[i];
+            out.drawTimes[i].copyFrom(mDrawTimes[i]);
+        }
+        out.transitionLatency.copyFrom(mTransitionLatency);
+        out.refreshCount = mRefreshCount;
+        out.drawCount = mDrawCount;
+        out.skippedFrameCount = mSkippedFrameCount;
+        out.partialFrameCount = mPartialFrameCount;
+        out.jankyFrameCount = mJankyFrameCount;
+        out.shaderAllocationCount = mRenderer != null ? mRenderer.getShaderAllocationCount() : 0;
+    }
+
+    public Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+        snapshot(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * 某一时刻的统计数据
+     */
+    public static final class Snapshot {
+        private final int[] frameCounts = new int[STATE_COUNT];
+        private final Histogram[] drawTimes = new Histogram[STATE_COUNT];
+        private final Histogram transitionLatency = new Histogram();
+        private int refreshCount;
+        private int drawCount;
+        private int skippedFrameCount;
+        private int partialFrameCount;
+        private int jankyFrameCount;
+        private int shaderAllocationCount;
+
+        public Snapshot() {
+            for (int i = 0; i < STATE_COUNT; i++) {
+                drawTimes[i] = new Histogram();
+            }
+        }
+
+        /**
+         * 某个状态下绘制的帧数
+         */
+        public int getFrameCount(State state) {
+            return frameCounts[state.ordinal()];
+        }
+
+        /**
+         * 某个状态下onDraw耗时的百分位数
+         *
+         * @param percentile 0~100
+         * @return 微秒,没有数据时为0
+         */
+        public long getDrawTimeMicros(State state, double percentile) {
+            return drawTimes[state.ordinal()].percentile(percentile);
+        }
+
+        /**
+         * 从setState到状态变化后第一帧画出的耗时的百分位数
+         *
+         * @param percentile 0~100
+         * @return 微秒,没有数据时为0
+         */
+        public long getTransitionLatencyMicros(double percentile) {
+            return transitionLatency.percentile(percentile);
+        }
+
+        public int getTransitionCount() {
+            return transitionLatency.count();
+        }
+
+        /**
+         * 动画时钟刷新的次数
+         */
+        public int getRefreshCount() {
+            return refreshCount;
+        }
+
+        /**
+         * 实际执行onDraw的次数
+         */
+        public int getDrawCount() {
+            return drawCount;
+        }
+
+        public int getSkippedFrameCount() {
+            return skippedFrameCount;
+        }
+
+        /**
+         * 只invalidate了一半区域的帧数,硬件加速时始终为0
+         */
+        public int getPartialFrameCount() {
+            return partialFrameCount;
+        }
+
+        /**
+         * 两帧间隔超过1.5倍16.6ms的次数
+         */
+        public int getJankyFrameCount() {
+            return jankyFrameCount;
+        }
+
+        /**
+         * 创建Shader和栅格化渐变条的次数
+         */
+        public int getShaderAllocationCount() {
+            return shaderAllocationCount;
+        }
+    }
+
+    /**
+     * 固定内存的对数分桶直方图,单位微秒
+     * <p>
+     * 小于16的值每个值一个桶,之后每个2的幂区间分16个桶,超过约2秒的值计入最后一个桶
+     */
+    static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 4;
+        private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+        private static final int MAX_SHIFT = 16;
+        private static final int BUCKET_COUNT = (MAX_SHIFT + 2) * SUB_BUCKET_COUNT;
+
+        private final int[] mCounts = new int[BUCKET_COUNT];
+        private int mTotal;
+
+        void record(long value) {
+            mCounts[bucketOf(value)]++;
+            mTotal++;
+        }
+
+        int count() {
+            return mTotal;
+        }
+
+        void clear() {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                mCounts[i] = 0;
+            }
+            mTotal = 0;
+        }
+
+        void copyFrom(Histogram other) {
+            System.arraycopy(other.mCounts, 0, mCounts, 0, BUCKET_COUNT);
+            mTotal = other.mTotal;
+        }
+
+        /**
+         * @return 百分位数所在桶的上界
+         */
+        long percentile(double percentile) {
+            if (mTotal == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(mTotal * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += mCounts[i];
+                if (seen >= target) {
+                    return upperBoundOf(i);
+                }
+            }
+            return upperBoundOf(BUCKET_COUNT - 1);
+        }
+
+        static int bucketOf(long value) {
+            if (value < SUB_BUCKET_COUNT) {
+                return (int) Math.max(0, value);
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+            if (shift > MAX_SHIFT) {
+                return BUCKET_COUNT - 1;
+            }
+            return shift * SUB_BUCKET_COUNT + (int) (value >> shift);
+        }
+
+        static long upperBoundOf(int bucket) {
+            if (bucket < SUB_BUCKET_COUNT) {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKET_COUNT - 1;
+            long lower = (long) (bucket - shift * SUB_BUCKET_COUNT) << shift;
+            return lower + (1L << shift) - 1;
+        }
+    }
+}
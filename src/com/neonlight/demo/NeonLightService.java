@@ -0,0 +1,153 @@
+package com.neonlight.demo;
+
+import android.app.Service;
+import android.content.Intent;
+import android.graphics.PixelFormat;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.util.Log;
+import android.view.Gravity;
+import android.view.WindowManager;
+
+/**
+ * 全局的NeonLight悬浮窗服务
+ * <p>
+ * 服务持有唯一的悬浮窗和其中的{@link NeonLight},所有客户端通过bindService得到的Messenger发送状态,
+ * 不再各自嵌入view,设备上只有一个渲染实例.Messenger的调用是单向的,客户端不会被阻塞.
+ * <p>
+ * 消息在后台线程接收后直接交给NeonLight,非UI线程的状态变化会进入队列并在下一帧合并,
+ * 一帧之内的多次更新只有最后一次生效.多个客户端同时发送时以最后收到的为准.
+ * 需要悬浮窗权限,没有权限时服务仍然可以绑定,但不显示.
+ */
+public class NeonLightService extends Service {
+
+    private static final String TAG = "NeonLightService";
+
+    /**
+     * 设置状态,arg1为{@link State#ordinal()}
+     */
+    public static final int MSG_SET_STATE = 1;
+    /**
+     * 设置是否为Privacy,arg1为1或0
+     */
+    public static final int MSG_SET_PRIVACY = 2;
+
+    /**
+     * 悬浮窗高度
+     */
+    private static final int OVERLAY_HEIGHT_DP = 48;
+
+    private static final State[] STATES = State.values();
+
+    private HandlerThread mReceiveThread;
+
+    private Messenger mMessenger;
+
+    private WindowManager mWindowManager;
+
+    private NeonLight mLight;
+
+    private boolean mOverlayAdded;
+
+    /**
+     * 创建设置状态的消息
+     */
+    public static Message obtainStateMessage(State state) {
+        return Message.obtain(null, MSG_SET_STATE, state.ordinal(), 0);
+    }
+
+    /**
+     * 创建设置Privacy的消息
+     */
+    public static Message obtainPrivacyMessage(boolean isPrivacy) {
+        return Message.obtain(null, MSG_SET_PRIVACY, isPrivacy ? 1 : 0, 0);
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mLight = new NeonLight(this);
+        mWindowManager = (WindowManager) getSystemService(WINDOW_SERVICE);
+        // TYPE_PHONE从8.0开始废弃,之前的版本没有TYPE_APPLICATION_OVERLAY,只能用它
+        @SuppressWarnings("deprecation")
+        int type = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O ? WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY
+                : WindowManager.LayoutParams.TYPE_PHONE;
+        WindowManager.LayoutParams params = new WindowManager.LayoutParams(
+                WindowManager.LayoutParams.MATCH_PARENT, NeonLight.dp2px(this, OVERLAY_HEIGHT_DP), type,
+                WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE | WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE
+                        | WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN,
+                PixelFormat.TRANSLUCENT);
+        params.gravity = Gravity.TOP;
+        try {
+            mWindowManager.addView(mLight, params);
+            mOverlayAdded = true;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to add overlay, missing SYSTEM_ALERT_WINDOW permission?", e);
+        }
+        mReceiveThread = new HandlerThread(TAG);
+        mReceiveThread.start();
+        mMessenger = new Messenger(new Handler(mReceiveThread.getLooper(), new Handler.Callback() {
+            @Override
+            public boolean handleMessage(Message msg) {
+                return onClientMessage(msg);
+            }
+        }));
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return mMessenger.getBinder();
+    }
+
+    /**
+     * 所有客户端解绑后回到IDLE
+     */
+    @Override
+    public boolean onUnbind(Intent intent) {
+        mLight.setState(State.IDLE);
+        return false;
+    }
+
+    @Override
+    public void onDestroy() {
+        mReceiveThread.quit();
+        if (mOverlayAdded) {
+            mWindowManager.removeView(mLight);
+            mOverlayAdded = false;
+        }
+        super.onDestroy();
+    }
+
+    NeonLight getLight() {
+        return mLight;
+    }
+
+    Looper getReceiveLooper() {
+        return mReceiveThread.getLooper();
+    }
+
+    /**
+     * 在接收线程调用
+     */
+    private boolean onClientMessage(Message msg) {
+        switch (msg.what) {
+        case MSG_SET_STATE:
+            if (msg.arg1 < 0 || msg.arg1 >= STATES.length) {
+                Log.w(TAG, "Unknown state: " + msg.arg1);
+                return true;
+            }
+            mLight.setState(STATES[msg.arg1]);
+            return true;
+        case MSG_SET_PRIVACY:
+            mLight.setPrivacy(msg.arg1 != 0);
+            return true;
+        default:
+            return false;
+        }
+    }
+}
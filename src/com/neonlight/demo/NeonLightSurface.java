@@ -0,0 +1,480 @@
+package com.neonlight.demo;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 在独立渲染线程上绘制的NeonLight
+ * <p>
+ * 接口与{@link NeonLight}相同,但动画和绘制都在渲染线程完成,不经过UI线程的measure/layout/draw,
+ * UI线程繁忙时动画也不会卡顿.UI线程的状态变化通过原子变量交给渲染线程,在下一帧开始时生效.
+ */
+public class NeonLightSurface extends SurfaceView implements SurfaceHolder.Callback {
+
+    private final TransitionQueue mTransitions = new TransitionQueue();
+
+    private final AtomicReference<Timeline> mPendingTimeline = new AtomicReference<Timeline>();
+
+    private final AtomicReference<Palette> mPendingPalette = new AtomicReference<Palette>();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * 只在渲染线程访问,渲染线程重建时通过join保证可见性
+     */
+    private final LightStateMachine mStateMachine;
+
+    private final LightRenderer mRenderer;
+
+    /**
+     * 点的初始半径,小于0表示使用默认值,渲染线程在下一帧读取
+     */
+    private volatile int mPointRadius = -1;
+
+    private volatile State mState = State.IDLE;
+
+    private volatile boolean isPrivacy;
+
+    private volatile int mRenderMode = NeonLight.RENDER_MODE_SHADER;
+
+    private volatile int mSurfaceWidth;
+
+    private volatile int mSurfaceHeight;
+
+    private volatile NeonLight.AnimationCallback mAnimationCallback;
+
+    private volatile RenderThread mRenderThread;
+
+    /**
+     * surface销毁的时间,没有销毁过时为-1.在渲染线程启动前后读写
+     */
+    private long mPausedNanos = -1;
+
+    private volatile int mSkippedFrameCount;
+
+    private volatile int mFrameCount;
+
+    private volatile Palette mPalette = Palette.DEFAULT;
+
+    private final AudioLevelMeter mAudioMeter = new AudioLevelMeter();
+
+    private final TraceRecorder mTrace = new TraceRecorder(TraceRecorder.DEFAULT_CAPACITY);
+
+    /**
+     * 在渲染线程使用,帧率设置从UI线程写入
+     */
+    private final FramePacer mPacer = new FramePacer();
+
+    private final Runnable mDispatchStartAnimationEnd = new Runnable() {
+        @Override
+        public void run() {
+            NeonLight.AnimationCallback callback = mAnimationCallback;
+            if (callback != null) {
+                callback.onStartAnimationEnd();
+            }
+        }
+    };
+
+    public NeonLightSurface(Context context) {
+        this(context, null, 0, 0);
+    }
+
+    public NeonLightSurface(Context context, AttributeSet attrs) {
+        this(context, attrs, 0, 0);
+    }
+
+    public NeonLightSurface(Context context, AttributeSet attrs, int defStyleAttr) {
+        this(context, attrs, defStyleAttr, 0);
+    }
+
+    public NeonLightSurface(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
+        super(context, attrs, defStyleAttr, defStyleRes);
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.NeonLight, defStyleAttr, defStyleRes);
+        int timelineId = a.getResourceId(R.styleable.NeonLight_neonTimeline, 0);
+        Palette palette = NeonLight.readPalette(a);
+        a.recycle();
+        mStateMachine = new LightStateMachine(timelineId != 0 ? NeonLight.loadTimeline(getResources(), timelineId)
+                : Timeline.getDefault());
+        if (palette != null) {
+            // 与setPalette一样交给渲染线程预热
+            mPalette = palette;
+            mPendingPalette.set(palette);
+        }
+        mStateMachine.setListener(new LightStateMachine.Listener() {
+            @Override
+            public void onStartAnimationEnd() {
+                mMainHandler.post(mDispatchStartAnimationEnd);
+            }
+        });
+        mRenderer = new LightRenderer();
+        setZOrderOnTop(true);
+        getHolder().setFormat(PixelFormat.TRANSLUCENT);
+        getHolder().addCallback(this);
+    }
+
+    /**
+     * 更新状态,可以在任意线程调用,下一帧生效
+     */
+    public void setState(State state) {
+        mState = state;
+        mTrace.record(TraceRecorder.EVENT_REQUEST_STATE, state.ordinal());
+        mTransitions.offerState(state);
+        wakeRenderThread();
+    }
+
+    public State getState() {
+        return mState;
+    }
+
+    /**
+     * 设置是否为Privacy,可以在任意线程调用,下一帧生效
+     */
+    public void setPrivacy(boolean isPrivacy) {
+        this.isPrivacy = isPrivacy;
+        mTrace.record(TraceRecorder.EVENT_REQUEST_PRIVACY, isPrivacy ? 1 : 0);
+        mTransitions.offerPrivacy(isPrivacy);
+        wakeRenderThread();
+    }
+
+    public boolean isPrivacy() {
+        return isPrivacy;
+    }
+
+    public void setTimeline(Timeline timeline) {
+        mPendingTimeline.set(timeline != null ? timeline : Timeline.getDefault());
+        wakeRenderThread();
+    }
+
+    /**
+     * 设置配色,在渲染线程中下一帧生效
+     */
+    public void setPalette(Palette palette) {
+        mPalette = palette != null ? palette : Palette.DEFAULT;
+        mPendingPalette.set(mPalette);
+        wakeRenderThread();
+    }
+
+    /**
+     * @return 最近一次设置的配色,渲染线程可能还没有开始使用
+     */
+    public Palette getPalette() {
+        return mPalette;
+    }
+
+    /**
+     * @see NeonLight#setPointRadius
+     */
+    public void setPointRadius(int radius) {
+        mPointRadius = radius;
+        wakeRenderThread();
+    }
+
+    public int getPointRadius() {
+        int radius = mPointRadius;
+        return radius >= 0 ? radius : NeonLight.dp2px(getContext(), NeonLight.DEFAULT_POINT_RADIUS_DP);
+    }
+
+    /**
+     * @param renderMode {@link NeonLight#RENDER_MODE_SHADER},{@link NeonLight#RENDER_MODE_SPRITE},
+     *                   {@link NeonLight#RENDER_MODE_STRIP}或{@link NeonLight#RENDER_MODE_RUNTIME_SHADER}
+     */
+    public void setRenderMode(int renderMode) {
+        LightRenderer.checkRenderMode(renderMode);
+        mRenderMode = renderMode;
+        wakeRenderThread();
+    }
+
+    public int getRenderMode() {
+        return mRenderMode;
+    }
+
+    /**
+     * @see NeonLight#feedAudio
+     */
+    public void feedAudio(short[] pcm, int length) {
+        mAudioMeter.write(pcm, length);
+    }
+
+    /**
+     * @see NeonLight#feedAudioLevel
+     */
+    public void feedAudioLevel(float level) {
+        mAudioMeter.writeLevel(level);
+    }
+
+    /**
+     * @see NeonLight#setAudioSampleRate
+     */
+    public void setAudioSampleRate(int sampleRate) {
+        mAudioMeter.setSampleRate(sampleRate);
+    }
+
+    /**
+     * 回调在UI线程执行
+     */
+    public void setAnimationCallback(NeonLight.AnimationCallback callback) {
+        mAnimationCallback = callback;
+    }
+
+    /**
+     * @see NeonLight#setMaxFrameRate
+     */
+    public void setMaxFrameRate(State state, int frameRate) {
+        mPacer.setMaxFrameRate(state, frameRate);
+        wakeRenderThread();
+    }
+
+    /**
+     * 因为帧率限制或者画面基本静止而跳过的帧数,在渲染线程更新,读取的值可能稍有滞后
+     */
+    public int getSavedFrameCount() {
+        return mPacer.getSavedFrameCount();
+    }
+
+    /**
+     * 因为没有可见变化而跳过绘制的帧数
+     */
+    public int getSkippedFrameCount() {
+        return mSkippedFrameCount;
+    }
+
+    /**
+     * 渲染线程处理过的帧数,包括跳过的帧
+     */
+    int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * @see NeonLight#flushTrace
+     */
+    public int flushTrace(File file) throws IOException {
+        mTrace.record(TraceRecorder.EVENT_WIDTH, mSurfaceWidth);
+        mTrace.record(TraceRecorder.EVENT_BASE_RADIUS, getPointRadius());
+        return mTrace.flush(file);
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        mRenderThread = new RenderThread(holder);
+        mRenderThread.start();
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        mSurfaceWidth = width;
+        mSurfaceHeight = height;
+        wakeRenderThread();
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        RenderThread thread = mRenderThread;
+        mRenderThread = null;
+        if (thread != null) {
+            thread.quitSafely();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mPausedNanos = System.nanoTime();
+            mTrace.record(TraceRecorder.EVENT_PAUSE, 0, mPausedNanos);
+        }
+    }
+
+    private void wakeRenderThread() {
+        RenderThread thread = mRenderThread;
+        if (thread != null) {
+            thread.wake();
+        }
+    }
+
+    private final class RenderThread extends HandlerThread implements Choreographer.FrameCallback {
+
+        private final SurfaceHolder mHolder;
+
+        private volatile Handler mHandler;
+
+        private Choreographer mChoreographer;
+
+        private boolean mFramePosted;
+
+        /**
+         * 下一帧是否需要重绘
+         */
+        private boolean mDirty = true;
+
+        /**
+         * 最近一次绘制的帧,用于判断新的一帧是否有可见的变化
+         */
+        private final Frame mDrawnFrame = new Frame();
+
+        private int mWidth;
+
+        private int mHeight;
+
+        private int mBaseRadius = -1;
+
+        private final Runnable mWakeRunnable = new Runnable() {
+            @Override
+            public void run() {
+                mDirty = true;
+                postFrame();
+            }
+        };
+
+        RenderThread(SurfaceHolder holder) {
+            super("NeonLightSurface", Process.THREAD_PRIORITY_DISPLAY);
+            mHolder = holder;
+        }
+
+        @Override
+        protected void onLooperPrepared() {
+            mHandler = new Handler(getLooper());
+            mChoreographer = Choreographer.getInstance();
+            if (mPausedNanos >= 0) {
+                // 动画从surface销毁时的进度继续
+                long now = System.nanoTime();
+                mStateMachine.shiftTime(now - mPausedNanos);
+                mTrace.record(TraceRecorder.EVENT_SHIFT, 0, now);
+                mPausedNanos = -1;
+                mPacer.reset();
+            }
+            postFrame();
+        }
+
+        void wake() {
+            Handler handler = mHandler;
+            if (handler != null) {
+                handler.post(mWakeRunnable);
+            }
+        }
+
+        private void postFrame() {
+            if (!mFramePosted) {
+                mFramePosted = true;
+                mChoreographer.postFrameCallback(this);
+            }
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mFramePosted = false;
+            mFrameCount++;
+            applyPendingChanges();
+            if (!mDirty && mStateMachine.isAnimationRunning()
+                    && !mPacer.shouldRender(mStateMachine.getState(), frameTimeNanos)) {
+                postFrame();
+                return;
+            }
+            float audioLevel = mAudioMeter.isActive(System.nanoTime()) ? mAudioMeter.getLevel() : -1;
+            mTrace.record(TraceRecorder.EVENT_FRAME,
+                    audioLevel < 0 ? TraceRecorder.NO_AUDIO : Math.round(audioLevel * 1000), frameTimeNanos);
+            mStateMachine.setAudioLevel(audioLevel);
+            Frame frame = mStateMachine.getFrame();
+            if (mStateMachine.advance(frameTimeNanos) && !mDirty) {
+                if (frame.diff(mDrawnFrame, mWidth) == 0) {
+                    mSkippedFrameCount++;
+                } else {
+                    mDirty = true;
+                }
+            }
+            mPacer.onRendered(frameTimeNanos, mDirty);
+            if (mDirty) {
+                mDirty = false;
+                mDrawnFrame.copyFrom(frame);
+                draw();
+            }
+            if (mStateMachine.isAnimationRunning()) {
+                postFrame();
+            }
+        }
+
+        /**
+         * 取出UI线程交过来的变化,中间被覆盖的值直接丢弃
+         */
+        private void applyPendingChanges() {
+            int radius = mPointRadius;
+            if (mWidth != mSurfaceWidth || mHeight != mSurfaceHeight || mBaseRadius < 0
+                    || radius >= 0 && radius != mBaseRadius) {
+                mWidth = mSurfaceWidth;
+                mHeight = mSurfaceHeight;
+                mBaseRadius = getPointRadius();
+                mStateMachine.setSize(mWidth, mBaseRadius);
+                mTrace.record(TraceRecorder.EVENT_WIDTH, mWidth);
+                mTrace.record(TraceRecorder.EVENT_BASE_RADIUS, mBaseRadius);
+                mDirty = true;
+            }
+            if (mRenderer.getRenderMode() != mRenderMode) {
+                mRenderer.setRenderMode(mRenderMode);
+            }
+            Timeline timeline = mPendingTimeline.getAndSet(null);
+            if (timeline != null) {
+                mStateMachine.setTimeline(timeline);
+            }
+            Palette palette = mPendingPalette.getAndSet(null);
+            if (palette != null) {
+                mRenderer.prewarm(palette);
+                mStateMachine.setPalette(palette);
+                mDirty = true;
+            }
+            int transitions = mTransitions.drain();
+            if (transitions != TransitionQueue.EMPTY) {
+                mPacer.reset();
+            }
+            com.neonlight.demo.State state = TransitionQueue.stateOf(transitions);
+            if (state != null) {
+                mStateMachine.setState(state);
+                mTrace.record(TraceRecorder.EVENT_APPLY_STATE, state.ordinal());
+            }
+            if (TransitionQueue.hasPrivacy(transitions)) {
+                boolean isPrivacy = TransitionQueue.privacyOf(transitions);
+                mStateMachine.setPrivacy(isPrivacy);
+                mTrace.record(TraceRecorder.EVENT_APPLY_PRIVACY, isPrivacy ? 1 : 0);
+            }
+        }
+
+        private void draw() {
+            Surface surface = mHolder.getSurface();
+            if (surface == null || !surface.isValid() || mWidth <= 0 || mHeight <= 0) {
+                return;
+            }
+            Canvas canvas;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                canvas = surface.lockHardwareCanvas();
+            } else {
+                canvas = surface.lockCanvas(null);
+            }
+            if (canvas == null) {
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                canvas.drawColor(0, PorterDuff.Mode.CLEAR);
+                mRenderer.draw(canvas, mStateMachine.getFrame(), mWidth, mHeight);
+            } finally {
+                surface.unlockCanvasAndPost(canvas);
+            }
+            long end = System.nanoTime();
+            mTrace.record(TraceRecorder.EVENT_DRAW, (int) ((end - start) / 1000), end);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.neonlight.demo;
+
+import java.util.WeakHashMap;
+
+/**
+ * NeonLight的配色
+ * <p>
+ * 创建后不可修改.创建时预先计算前景色和背景色之间的257级渐变表,每帧的颜色计算只需要查表.
+ * 只改透明度时直接替换最高字节,比查表更快,不建表.时间轴中的颜色按默认配色编写,通过{@link #bind}替换为这套配色后重新烘焙.
+ */
+public final class Palette {
+
+    /**
+     * 默认配色,与{@link NeonLight#COLOR_FOREGROUND}等常量相同
+     */
+    public static final Palette DEFAULT = new Palette(LightColors.FOREGROUND, LightColors.BACKGROUND,
+            LightColors.ERROR, LightColors.PRIVACY);
+
+    private final int mForeground;
+    private final int mBackground;
+    private final int mError;
+    private final int mPrivacy;
+
+    /**
+     * 下标为权重0~256,从背景色到前景色
+     */
+    private final int[] mBackgroundToForeground = new int[257];
+
+    /**
+     * 绑定过的时间轴,key为原时间轴,多个view使用不同时间轴时互不覆盖,切换配色时不需要重新烘焙
+     */
+    private final WeakHashMap<Timeline, Timeline> mBound = new WeakHashMap<Timeline, Timeline>();
+
+    public Palette(int foreground, int background, int error, int privacy) {
+        mForeground = foreground;
+        mBackground = background;
+        mError = error;
+        mPrivacy = privacy;
+        for (int weight = 0; weight <= 256; weight++) {
+            mBackgroundToForeground[weight] = Argb.lerp(background, foreground, weight);
+        }
+    }
+
+    public int getForeground() {
+        return mForeground;
+    }
+
+    public int getBackground() {
+        return mBackground;
+    }
+
+    public int getError() {
+        return mError;
+    }
+
+    public int getPrivacy() {
+        return mPrivacy;
+    }
+
+    /**
+     * @param fraction [0, 1],0为背景色,1为前景色
+     */
+    int backgroundToForeground(float fraction) {
+        return mBackgroundToForeground[(int) (fraction * 256 + 0.5f)];
+    }
+
+    /**
+     * @param weight 0~256
+     */
+    int backgroundToForegroundWeight(int weight) {
+        return mBackgroundToForeground[weight];
+    }
+
+    /**
+     * 把按默认配色编写的颜色换成这套配色,RGB与默认配色中某个颜色相同时替换,透明度不同时保留原来的透明度
+     */
+    int map(int color) {
+        if (this == DEFAULT) {
+            return color;
+        }
+        if (color == LightColors.FOREGROUND) {
+            return mForeground;
+        } else if (color == LightColors.BACKGROUND) {
+            return mBackground;
+        } else if (color == LightColors.ERROR) {
+            return mError;
+        } else if (color == LightColors.PRIVACY) {
+            return mPrivacy;
+        }
+        int alpha = color >>> 24;
+        int rgb = color & 0x00FFFFFF;
+        if (rgb == (LightColors.FOREGROUND & 0x00FFFFFF)) {
+            return Argb.withAlpha(mForeground, alpha);
+        } else if (rgb == (LightColors.BACKGROUND & 0x00FFFFFF)) {
+            return Argb.withAlpha(mBackground, alpha);
+        } else if (rgb == (LightColors.ERROR & 0x00FFFFFF)) {
+            return Argb.withAlpha(mError, alpha);
+        } else if (rgb == (LightColors.PRIVACY & 0x00FFFFFF)) {
+            return Argb.withAlpha(mPrivacy, alpha);
+        }
+        return color;
+    }
+
+    /**
+     * 获取使用这套配色的时间轴,结果会被缓存,应该在动画开始前调用
+     */
+    synchronized Timeline bind(Timeline timeline) {
+        if (this == DEFAULT) {
+            return timeline;
+        }
+        Timeline bound = mBound.get(timeline);
+        if (bound == null) {
+            bound = timeline.withColors(this);
+            mBound.put(timeline, bound);
+        }
+        return bound;
+    }
+}
@@ -0,0 +1,8 @@
+package com.neonlight.demo;
+
+/**
+ * 动画阶段,每个状态由一个或多个阶段组成,阶段的关键帧定义在{@link Timeline}中
+ */
+enum Phase {
+    NONE, RECOVERY, START, LISTENING, THINKING, THINKING_RECOVERY, SPEAKING, SPEAKING_RECOVERY, PRIVACY, ERROR
+}
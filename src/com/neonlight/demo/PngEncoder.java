@@ -0,0 +1,97 @@
+package com.neonlight.demo;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 只依赖java.util.zip的PNG编码,输出8位RGBA
+ * <p>
+ * 每行使用Sub过滤,渐变图像压缩率高且编码快.缓冲区在实例中复用,一个实例只能在一个线程中使用.
+ * Deflater持有native内存,每次编码单独创建并在结束时释放,不随实例一直保留.
+ */
+final class PngEncoder {
+
+    private static final byte[] SIGNATURE = new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+
+    private static final int FILTER_SUB = 1;
+
+    private final CRC32 mCrc = new CRC32();
+    private byte[] mRaw = new byte[0];
+    private byte[] mCompressed = new byte[0];
+
+    /**
+     * @param pixels 非预乘的ARGB,按行存放
+     */
+    void encode(int[] pixels, int width, int height, OutputStream out) throws IOException {
+        int stride = width * 4 + 1;
+        int rawSize = stride * height;
+        if (mRaw.length < rawSize) {
+            mRaw = new byte[rawSize];
+            mCompressed = new byte[rawSize + rawSize / 100 + 64];
+        }
+        byte[] raw = mRaw;
+        for (int y = 0; y < height; y++) {
+            int row = y * stride;
+            raw[row] = FILTER_SUB;
+            int previous = 0;
+            for (int x = 0; x < width; x++) {
+                int argb = pixels[y * width + x];
+                int i = row + 1 + x * 4;
+                raw[i] = (byte) ((argb >>> 16) - (previous >>> 16));
+                raw[i + 1] = (byte) ((argb >>> 8) - (previous >>> 8));
+                raw[i + 2] = (byte) (argb - previous);
+                raw[i + 3] = (byte) ((argb >>> 24) - (previous >>> 24));
+                previous = argb;
+            }
+        }
+        int compressedSize = 0;
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw, 0, rawSize);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (compressedSize == mCompressed.length) {
+                    byte[] grown = new byte[mCompressed.length * 2];
+                    System.arraycopy(mCompressed, 0, grown, 0, compressedSize);
+                    mCompressed = grown;
+                }
+                compressedSize += deflater.deflate(mCompressed, compressedSize, mCompressed.length - compressedSize);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;
+        header[9] = 6;
+        writeChunk(data, "IHDR", header, header.length);
+        writeChunk(data, "IDAT", mCompressed, compressedSize);
+        writeChunk(data, "IEND", header, 0);
+        data.flush();
+    }
+
+    private void writeChunk(DataOutputStream out, String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        mCrc.reset();
+        mCrc.update(typeBytes);
+        mCrc.update(data, 0, length);
+        out.writeInt((int) mCrc.getValue());
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,156 @@
+package com.neonlight.demo;
+
+/**
+ * 环形排布,帧中的位置对应角度:0在正上方,顺时针增加到1回到正上方.半径按沿圆环的弧长计算
+ * <p>
+ * 圆环是贴着view内切圆的一条环带.创建时为环带内的每个像素计算一次对应的列和边缘覆盖率,
+ * 每帧先按周长计算一行,再按查找表贴到环带上,不需要三角函数,结果与{@link NeonLight#RENDER_MODE_STRIP}一样不随半径方向变化.
+ * 只有一个点时先把点移到这一行的中间计算再旋转回去,点跨过正上方时渐变是连续的;START的两个点和光场在正上方不环绕.
+ * 输出非预乘的ARGB,环带外的像素不写入.一个实例只能在一个线程中使用.
+ */
+final class RingGeometry {
+
+    private final int mWidth;
+    private final int mHeight;
+
+    /**
+     * 环带中线的周长,即帧坐标的长度
+     */
+    private final int mLength;
+
+    /**
+     * 环带内的像素在view中的下标
+     */
+    private final int[] mPixels;
+
+    /**
+     * 每个像素对应的列,[0, mLength)
+     */
+    private final int[] mColumns;
+
+    /**
+     * 每个像素的覆盖率,0~256,只在内外边缘小于256
+     */
+    private final int[] mCoverage;
+
+    private final int[] mRow;
+
+    private final Frame mCentered = new Frame();
+
+    /**
+     * @param thickness 环带宽度(px)
+     */
+    RingGeometry(int width, int height, float thickness) {
+        mWidth = width;
+        mHeight = height;
+        float outer = Math.min(width, height) / 2f;
+        float inner = Math.max(0, outer - thickness);
+        mLength = Math.max(1, Math.round((float) (Math.PI * (outer + inner))));
+        mRow = new int[mLength];
+        float centerX = width / 2f;
+        float centerY = height / 2f;
+        float outerSquared = (outer + 0.5f) * (outer + 0.5f);
+        float innerSquared = inner > 0.5f ? (inner - 0.5f) * (inner - 0.5f) : -1;
+        int count = 0;
+        for (int y = 0; y < height; y++) {
+            float dy = y + 0.5f - centerY;
+            for (int x = 0; x < width; x++) {
+                float dx = x + 0.5f - centerX;
+                float distanceSquared = dx * dx + dy * dy;
+                if (distanceSquared < outerSquared && distanceSquared > innerSquared) {
+                    count++;
+                }
+            }
+        }
+        mPixels = new int[count];
+        mColumns = new int[count];
+        mCoverage = new int[count];
+        int i = 0;
+        for (int y = 0; y < height; y++) {
+            float dy = y + 0.5f - centerY;
+            for (int x = 0; x < width; x++) {
+                float dx = x + 0.5f - centerX;
+                float distanceSquared = dx * dx + dy * dy;
+                if (distanceSquared >= outerSquared || distanceSquared <= innerSquared) {
+                    continue;
+                }
+                float distance = (float) Math.sqrt(distanceSquared);
+                float coverage = Math.min(1, outer + 0.5f - distance) * Math.min(1, distance - inner + 0.5f);
+                // y轴向下,从正上方顺时针的角度
+                double fraction = Math.atan2(dx, -dy) / (2 * Math.PI);
+                if (fraction < 0) {
+                    fraction += 1;
+                }
+                mPixels[i] = y * width + x;
+                mColumns[i] = Math.min(mLength - 1, (int) (fraction * mLength));
+                mCoverage[i] = Math.max(0, Math.min(256, (int) (coverage * 256)));
+                i++;
+            }
+        }
+    }
+
+    int getWidth() {
+        return mWidth;
+    }
+
+    int getHeight() {
+        return mHeight;
+    }
+
+    int getLength() {
+        return mLength;
+    }
+
+    /**
+     * 查找表占用的字节数
+     */
+    int getByteCount() {
+        return (mPixels.length * 3 + mRow.length) * 4;
+    }
+
+    /**
+     * @param pixels 至少width * height,按行存放
+     */
+    void draw(SoftwareRasterizer rasterizer, Frame frame, int[] pixels) {
+        Frame row = frame;
+        int shift = 0;
+        if (frame.animating && !frame.split && frame.pointCount > 0) {
+            mCentered.copyFrom(frame);
+            mCentered.position[0] = 0.5f;
+            row = mCentered;
+            shift = Math.round((frame.position[0] - 0.5f) * mLength) % mLength;
+            if (shift < 0) {
+                shift += mLength;
+            }
+        }
+        rasterizer.drawRow(row, mLength, 0.5f, mRow, 0);
+        wrap(shift, pixels);
+    }
+
+    void drawField(SoftwareRasterizer rasterizer, LightField field, Palette palette, int[] pixels) {
+        rasterizer.drawField(field, palette, mLength, mRow, 0);
+        wrap(0, pixels);
+    }
+
+    /**
+     * 把一行贴到环带上
+     *
+     * @param shift 第i列显示这一行中第i - shift列
+     */
+    private void wrap(int shift, int[] pixels) {
+        int[] row = mRow;
+        int length = mLength;
+        for (int i = 0; i < mPixels.length; i++) {
+            int column = mColumns[i] - shift;
+            if (column < 0) {
+                column += length;
+            }
+            int color = row[column];
+            int coverage = mCoverage[i];
+            if (coverage < 256) {
+                color = Argb.withAlpha(color, ((color >>> 24) * coverage) >> 8);
+            }
+            pixels[mPixels[i]] = color;
+        }
+    }
+}
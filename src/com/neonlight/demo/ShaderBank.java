@@ -0,0 +1,154 @@
+package com.neonlight.demo;
+
+import android.graphics.RadialGradient;
+import android.graphics.Shader;
+
+import java.util.ArrayList;
+
+/**
+ * 渐变Shader缓存
+ * <p>
+ * Shader统一以原点为圆心,半径为1创建,绘制时由canvas平移缩放到实际的圆心和半径,Shader本身的local matrix始终不变,
+ * 否则Android 8.0开始每次修改都会重新创建native对象.颜色每个通道量化为6位后作为key,同一组颜色只创建一次,
+ * {@link #prewarm}覆盖的颜色在动画过程中不再分配新的对象.
+ * 同一时间只能在一个线程中使用,可以在后台线程创建并预热后再交给UI线程.
+ */
+final class ShaderBank {
+
+    /**
+     * 槽位数,START状态的左右两个点需要各自独立的Shader实例
+     */
+    static final int SLOT_COUNT = 2;
+
+    private static final int CAPACITY = 4096;
+    private static final int MAX_SIZE = CAPACITY * 3 / 4;
+
+    private final float[] mStops;
+    private final long[] mKeys = new long[CAPACITY];
+    private final RadialGradient[] mShaders = new RadialGradient[CAPACITY];
+    private int mSize;
+    private int mAllocationCount;
+    /**
+     * 已经预热过的配色,clear后清空
+     */
+    private final ArrayList<Palette> mPrewarmed = new ArrayList<Palette>();
+
+    ShaderBank(float[] stops) {
+        mStops = stops;
+    }
+
+    /**
+     * 获取颜色对应的Shader,不存在时才创建
+     *
+     * @param slot   槽位,取值[0, SLOT_COUNT)
+     * @param color0 圆心颜色
+     * @param color1 边缘颜色
+     */
+    RadialGradient obtain(int slot, int color0, int color1) {
+        long key = key(slot, color0, color1);
+        int mask = CAPACITY - 1;
+        int index = hash(key) & mask;
+        while (mShaders[index] != null) {
+            if (mKeys[index] == key) {
+                return mShaders[index];
+            }
+            index = (index + 1) & mask;
+        }
+        if (mSize >= MAX_SIZE) {
+            clear();
+            index = hash(key) & mask;
+        }
+        RadialGradient shader = new RadialGradient(0, 0, 1, new int[] { Argb.quantize(color0), Argb.quantize(color1) },
+                mStops, Shader.TileMode.CLAMP);
+        mKeys[index] = key;
+        mShaders[index] = shader;
+        mSize++;
+        mAllocationCount++;
+        return shader;
+    }
+
+    /**
+     * 预先创建两个颜色之间渐变过程中会用到的所有Shader
+     */
+    void prewarmLerp(int slot, int from, int to, int color1) {
+        for (int i = 0; i <= 255; i++) {
+            obtain(slot, Argb.lerp(from, to, i / 255f), color1);
+        }
+    }
+
+    /**
+     * 预先创建颜色透明度变化过程中会用到的所有Shader
+     */
+    void prewarmAlpha(int slot, int color0, int color1) {
+        for (int alpha = 0; alpha <= 255; alpha += 4) {
+            obtain(slot, Argb.withAlpha(color0, alpha), color1);
+        }
+    }
+
+    /**
+     * 预先创建整个点淡出过程中会用到的所有Shader,圆心和边缘颜色的透明度同时变化
+     */
+    void prewarmFade(int slot, int color0, int color1) {
+        for (int alpha = 0; alpha <= 255; alpha += 4) {
+            obtain(slot, Argb.withAlpha(color0, alpha), Argb.withAlpha(color1, alpha));
+        }
+    }
+
+    /**
+     * 预先创建各个状态动画会用到的Shader,避免动画过程中再创建
+     * <p>
+     * 包括默认时间轴各阶段的颜色,以及RECOVERY从各个阶段的最后一帧淡出.状态切换时交叉淡入的中间颜色不在其中
+     */
+    void prewarm(Palette palette) {
+        if (mPrewarmed.contains(palette)) {
+            return;
+        }
+        int foreground = palette.getForeground();
+        int background = palette.getBackground();
+        for (int slot = 0; slot < SLOT_COUNT; slot++) {
+            obtain(slot, foreground, background);
+        }
+        prewarmAlpha(0, foreground, background);
+        prewarmLerp(0, foreground, background, background);
+        prewarmAlpha(0, palette.getError(), background);
+        prewarmAlpha(0, palette.getPrivacy(), background);
+        for (int slot = 0; slot < SLOT_COUNT; slot++) {
+            prewarmFade(slot, foreground, background);
+        }
+        prewarmFade(0, palette.getError(), background);
+        prewarmFade(0, palette.getPrivacy(), background);
+        mPrewarmed.add(palette);
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * 累计创建Shader的次数,clear后不清零
+     */
+    int allocationCount() {
+        return mAllocationCount;
+    }
+
+    void clear() {
+        for (int i = 0; i < CAPACITY; i++) {
+            mShaders[i] = null;
+        }
+        mSize = 0;
+        mPrewarmed.clear();
+    }
+
+    private static long key(int slot, int color0, int color1) {
+        return ((long) slot << 48) | ((long) pack(color0) << 24) | pack(color1);
+    }
+
+    private static int pack(int color) {
+        return ((color >>> 8) & 0xFC0000) | ((color >>> 6) & 0x3F000) | ((color >>> 4) & 0xFC0) | ((color >>> 2) & 0x3F);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
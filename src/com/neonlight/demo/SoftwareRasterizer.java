@@ -0,0 +1,159 @@
+package com.neonlight.demo;
+
+/**
+ * 不依赖Android的{@link Frame}光栅化,结果与LightRenderer一致,用于离线导出和像素对比
+ * <p>
+ * 输出非预乘的ARGB,每个点是两段的径向渐变:半径0.75以内为圆心颜色,0.75到1之间过渡到边缘颜色,之外为边缘颜色.
+ * 过渡带与Skia一样在预乘空间插值.
+ * 只在过渡带内开方,其余像素只比较距离的平方.一个实例只能在一个线程中使用.
+ */
+final class SoftwareRasterizer {
+
+    /**
+     * 光场一维衰减表的级数
+     */
+    private static final int KERNEL_SIZE = 256;
+
+    private final float mInnerStop;
+
+    /**
+     * 下标为到圆心的距离 / 半径 * KERNEL_SIZE,值为权重0~256,与径向渐变的两段相同
+     */
+    private final int[] mKernel = new int[KERNEL_SIZE];
+
+    /**
+     * 光场每一列的强度累加值,256 * 256为1
+     */
+    private int[] mAccumulator;
+
+    SoftwareRasterizer() {
+        this(Frame.EDGE_STOPS[0]);
+    }
+
+    SoftwareRasterizer(float innerStop) {
+        mInnerStop = innerStop;
+        for (int i = 0; i < KERNEL_SIZE; i++) {
+            float distance = (i + 0.5f) / KERNEL_SIZE;
+            mKernel[i] = distance <= innerStop ? 256 : (int) ((1 - distance) / (1 - innerStop) * 256);
+        }
+    }
+
+    /**
+     * @param pixels 至少width * height,按行存放
+     */
+    void draw(Frame frame, int width, int height, int[] pixels) {
+        if (!frame.animating) {
+            fill(pixels, 0, width * height, frame.fillColor);
+            return;
+        }
+        float centerY = height / 2;
+        for (int y = 0; y < height; y++) {
+            drawRow(frame, width, y + 0.5f - centerY, pixels, y * width);
+        }
+    }
+
+    /**
+     * 只计算一行,用于高度很小,各列颜色几乎不变的view
+     *
+     * @param dy 这一行到圆心的垂直距离
+     * @param row 至少offset + width
+     */
+    void drawRow(Frame frame, int width, float dy, int[] row, int offset) {
+        if (!frame.animating) {
+            fill(row, offset, offset + width, frame.fillColor);
+        } else if (frame.split) {
+            int left = frame.centerX(0, width) < frame.centerX(1, width) ? 0 : 1;
+            int middle = Math.max(0, Math.min(width, Math.round(frame.middleX(width))));
+            drawSpan(frame, left, width, dy, 0, middle, row, offset);
+            drawSpan(frame, 1 - left, width, dy, middle, width, row, offset);
+        } else if (frame.pointCount > 0) {
+            drawSpan(frame, 0, width, dy, 0, width, row, offset);
+        } else {
+            fill(row, offset, offset + width, 0);
+        }
+    }
+
+    /**
+     * 用第index个点的渐变填充一行中的[left, right)列
+     */
+    private void drawSpan(Frame frame, int index, int width, float dy, int left, int right, int[] row,
+            int offset) {
+        float centerX = frame.centerX(index, width);
+        float radius = frame.radius[index];
+        int color0 = frame.centerColor[index];
+        int color1 = frame.edgeColor[index];
+        float inner = radius * mInnerStop;
+        float innerSquared = inner * inner;
+        float outerSquared = radius * radius;
+        float band = radius - inner;
+        float dySquared = dy * dy;
+        if (dySquared >= outerSquared) {
+            fill(row, offset + left, offset + right, color1);
+            return;
+        }
+        for (int x = left; x < right; x++) {
+            float dx = x + 0.5f - centerX;
+            float distanceSquared = dx * dx + dySquared;
+            int color;
+            if (distanceSquared <= innerSquared) {
+                color = color0;
+            } else if (distanceSquared >= outerSquared) {
+                color = color1;
+            } else {
+                int weight = (int) (((float) Math.sqrt(distanceSquared) - inner) / band * 256);
+                color = Argb.lerpPremultiplied(color0, color1, weight);
+            }
+            row[offset + x] = color;
+        }
+    }
+
+    /**
+     * 绘制光场的一行.每个点只把衰减表累加到自己覆盖的列,最后遍历一次宽度换成颜色并清空累加值
+     *
+     * @param row 至少offset + width
+     */
+    void drawField(LightField field, Palette palette, int width, int[] row, int offset) {
+        int[] accumulator = mAccumulator;
+        if (accumulator == null || accumulator.length < width) {
+            accumulator = mAccumulator = new int[width];
+        }
+        int[] kernel = mKernel;
+        for (int i = 0; i < field.pointCount; i++) {
+            float radius = field.radius[i];
+            int gain = (int) (field.intensity[i] * 256 + 0.5f);
+            if (radius <= 0 || gain == 0) {
+                continue;
+            }
+            float centerX = field.position[i] * width;
+            int left = Math.max(0, (int) (centerX - radius));
+            int right = Math.min(width, (int) Math.ceil(centerX + radius));
+            float scale = KERNEL_SIZE / radius;
+            // 圆心两侧分开遍历,避免逐列取绝对值
+            int middle = Math.max(left, Math.min(right, Math.round(centerX)));
+            float distance = (centerX - left - 0.5f) * scale;
+            for (int x = left; x < middle; x++, distance -= scale) {
+                int index = (int) distance;
+                if (index < KERNEL_SIZE) {
+                    accumulator[x] += kernel[index] * gain;
+                }
+            }
+            distance = (middle + 0.5f - centerX) * scale;
+            for (int x = middle; x < right; x++, distance += scale) {
+                int index = (int) distance;
+                if (index < KERNEL_SIZE) {
+                    accumulator[x] += kernel[index] * gain;
+                }
+            }
+        }
+        for (int x = 0; x < width; x++) {
+            row[offset + x] = palette.backgroundToForegroundWeight(Math.min(256, accumulator[x] >> 8));
+            accumulator[x] = 0;
+        }
+    }
+
+    private static void fill(int[] pixels, int from, int to, int color) {
+        for (int i = from; i < to; i++) {
+            pixels[i] = color;
+        }
+    }
+}
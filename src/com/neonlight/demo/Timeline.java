@@ -0,0 +1,464 @@
+package com.neonlight.demo;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 动画时间轴
+ * <p>
+ * 描述每个{@link Phase}的时长,缓动,循环方式以及各个点的关键帧,加载时把缓动和关键帧插值预先计算成
+ * {@link #SAMPLES}+1个采样点的查找表,每帧只需要查表.
+ * <p>
+ * 二进制格式(big-endian):
+ *
+ * <pre>
+ * int    magic 'NLTL'
+ * short  version
+ * short  clip数量
+ * clip:
+ *   UTF    阶段名称,见{@link Phase}
+ *   int    时长(ms)
+ *   byte   缓动 EASING_*
+ *   byte   结束行为 END_*
+ *   UTF    END_NEXT时的下一个阶段,否则为空字符串
+ *   byte   标志位 FLAG_*
+ *   byte   进入阶段时重置的点数,0表示沿用上一阶段的点
+ *   byte   track数量
+ *   track:
+ *     byte   目标 TARGET_*
+ *     byte   点的序号
+ *     byte   单位 UNIT_*
+ *     float  偏移(px)
+ *     byte   关键帧数量
+ *     关键帧: float 缓动后的进度, 颜色目标为int ARGB, 其它为float
+ * </pre>
+ */
+public final class Timeline {
+
+    static final int EASING_LINEAR = 0;
+    static final int EASING_ACCELERATE = 1;
+    static final int EASING_ACCELERATE_DECELERATE = 2;
+
+    /**
+     * 结束后停止,停在最后一帧
+     */
+    static final int END_STOP = 0;
+    /**
+     * 结束后重新开始
+     */
+    static final int END_LOOP = 1;
+    /**
+     * 结束后进入下一个阶段
+     */
+    static final int END_NEXT = 2;
+
+    /**
+     * 一轮结束时如果已经是IDLE状态,进入RECOVERY
+     */
+    static final int FLAG_RECOVER_ON_IDLE = 1;
+
+    /**
+     * 点的位置,相对于宽度的比例
+     */
+    static final int TARGET_POSITION = 0;
+    static final int TARGET_RADIUS = 1;
+    static final int TARGET_CENTER_COLOR = 2;
+    static final int TARGET_EDGE_COLOR = 3;
+    /**
+     * 替换所有点颜色的透明度,0~255
+     */
+    static final int TARGET_FADE = 4;
+
+    static final int UNIT_PIXEL = 0;
+    static final int UNIT_BASE_RADIUS = 1;
+    static final int UNIT_WIDTH = 2;
+
+    static final int SAMPLES = 256;
+
+    private static final int MAGIC = 0x4E4C544C;
+    private static final int VERSION = 1;
+
+    private static Timeline sDefault;
+
+    private final Clip[] mClips = new Clip[Phase.values().length];
+
+    private Timeline() {
+    }
+
+    Clip getClip(Phase phase) {
+        return mClips[phase.ordinal()];
+    }
+
+    private void add(Clip clip) {
+        mClips[clip.phase.ordinal()] = clip;
+    }
+
+    /**
+     * 复制一份时间轴,颜色关键帧换成palette中对应的颜色后重新烘焙
+     */
+    Timeline withColors(Palette palette) {
+        Timeline timeline = new Timeline();
+        for (Clip clip : mClips) {
+            if (clip == null) {
+                continue;
+            }
+            Track[] tracks = new Track[clip.tracks.length];
+            for (int i = 0; i < tracks.length; i++) {
+                Track track = clip.tracks[i];
+                int[] colors = new int[track.colors.length];
+                for (int k = 0; k < colors.length; k++) {
+                    colors[k] = isColor(track.target) ? palette.map(track.colors[k]) : track.colors[k];
+                }
+                tracks[i] = new Track(track.target, track.point, track.unit, track.offset, track.fractions,
+                        track.values, colors);
+            }
+            timeline.add(new Clip(clip.phase, clip.durationMillis, clip.easing, clip.endAction, clip.next,
+                    clip.flags, clip.pointCount, tracks));
+        }
+        return timeline;
+    }
+
+    /**
+     * 读取二进制格式的时间轴
+     */
+    public static Timeline read(InputStream in) throws IOException {
+        DataInputStream input = new DataInputStream(in);
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not a timeline");
+        }
+        int version = input.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported timeline version: " + version);
+        }
+        Timeline timeline = new Timeline();
+        int clipCount = input.readShort();
+        try {
+            for (int i = 0; i < clipCount; i++) {
+                timeline.add(readClip(input));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid timeline: " + e.getMessage());
+        }
+        return timeline;
+    }
+
+    private static Clip readClip(DataInputStream input) throws IOException {
+        Phase phase = readPhase(input.readUTF());
+        int durationMillis = input.readInt();
+        int easing = input.readByte();
+        int endAction = input.readByte();
+        String next = input.readUTF();
+        int flags = input.readByte();
+        int pointCount = input.readByte();
+        Track[] tracks = new Track[input.readUnsignedByte()];
+        for (int j = 0; j < tracks.length; j++) {
+            int target = input.readByte();
+            int point = input.readByte();
+            int unit = input.readByte();
+            float offset = input.readFloat();
+            int keyCount = input.readUnsignedByte();
+            if (keyCount <= 0) {
+                throw new IOException("Track without keyframes in " + phase);
+            }
+            float[] fractions = new float[keyCount];
+            float[] values = new float[keyCount];
+            int[] colors = new int[keyCount];
+            for (int k = 0; k < keyCount; k++) {
+                fractions[k] = input.readFloat();
+                if (isColor(target)) {
+                    colors[k] = input.readInt();
+                } else {
+                    values[k] = input.readFloat();
+                }
+            }
+            tracks[j] = new Track(target, point, unit, offset, fractions, values, colors);
+        }
+        return new Clip(phase, durationMillis, easing, endAction,
+                endAction == END_NEXT ? readPhase(next) : null, flags, pointCount, tracks);
+    }
+
+    /**
+     * 写出二进制格式的时间轴
+     */
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream output = new DataOutputStream(out);
+        List<Clip> clips = new ArrayList<Clip>();
+        for (Clip clip : mClips) {
+            if (clip != null) {
+                clips.add(clip);
+            }
+        }
+        output.writeInt(MAGIC);
+        output.writeShort(VERSION);
+        output.writeShort(clips.size());
+        for (Clip clip : clips) {
+            output.writeUTF(clip.phase.name());
+            output.writeInt(clip.durationMillis);
+            output.writeByte(clip.easing);
+            output.writeByte(clip.endAction);
+            output.writeUTF(clip.next != null ? clip.next.name() : "");
+            output.writeByte(clip.flags);
+            output.writeByte(clip.pointCount);
+            output.writeByte(clip.tracks.length);
+            for (Track track : clip.tracks) {
+                output.writeByte(track.target);
+                output.writeByte(track.point);
+                output.writeByte(track.unit);
+                output.writeFloat(track.offset);
+                output.writeByte(track.fractions.length);
+                for (int k = 0; k < track.fractions.length; k++) {
+                    output.writeFloat(track.fractions[k]);
+                    if (isColor(track.target)) {
+                        output.writeInt(track.colors[k]);
+                    } else {
+                        output.writeFloat(track.values[k]);
+                    }
+                }
+            }
+        }
+        output.flush();
+    }
+
+    private static Phase readPhase(String name) throws IOException {
+        try {
+            Phase phase = Phase.valueOf(name);
+            if (phase != Phase.NONE) {
+                return phase;
+            }
+        } catch (IllegalArgumentException e) {
+            // 走下面的异常
+        }
+        throw new IOException("Unknown phase: " + name);
+    }
+
+    private static boolean isColor(int target) {
+        return target == TARGET_CENTER_COLOR || target == TARGET_EDGE_COLOR;
+    }
+
+    /**
+     * 内置的默认时间轴
+     */
+    public static synchronized Timeline getDefault() {
+        if (sDefault == null) {
+            sDefault = createDefault();
+        }
+        return sDefault;
+    }
+
+    private static Timeline createDefault() {
+        final int foreground = LightColors.FOREGROUND;
+        final int background = LightColors.BACKGROUND;
+        Timeline timeline = new Timeline();
+        timeline.add(new Clip(Phase.RECOVERY, 200, EASING_ACCELERATE, END_STOP, null, 0, 0,
+                floatTrack(TARGET_FADE, 0, UNIT_PIXEL, 0, 0f, 255f, 1f, 0f)));
+        timeline.add(new Clip(Phase.START, 1000, EASING_ACCELERATE_DECELERATE, END_STOP, null, 0, 2,
+                floatTrack(TARGET_POSITION, 0, UNIT_PIXEL, 0, 0f, 0f, 1f, 0.5f),
+                floatTrack(TARGET_POSITION, 1, UNIT_PIXEL, 0, 0f, 1f, 1f, 0.5f)));
+        timeline.add(new Clip(Phase.LISTENING, 1200, EASING_ACCELERATE, END_LOOP, null, FLAG_RECOVER_ON_IDLE, 1,
+                floatTrack(TARGET_RADIUS, 0, UNIT_BASE_RADIUS, 0,
+                        evenly(1.0f, 0.7f, 1.0f, 0.7f, 1.1f, 0.6f, 0.8f, 1.0f, 0.7f, 1.0f))));
+        timeline.add(new Clip(Phase.THINKING, 700, EASING_ACCELERATE, END_NEXT, Phase.THINKING_RECOVERY,
+                FLAG_RECOVER_ON_IDLE, 1,
+                floatTrack(TARGET_RADIUS, 0, UNIT_WIDTH, 100, 0f, 0f, 1f, 1f),
+                colorTrack(TARGET_CENTER_COLOR, 0, new float[] { 0f, 155f / 255f, 1f },
+                        new int[] { Argb.withAlpha(foreground, 100), foreground, foreground })));
+        timeline.add(new Clip(Phase.THINKING_RECOVERY, 200, EASING_ACCELERATE_DECELERATE, END_NEXT, Phase.THINKING,
+                0, 1,
+                floatTrack(TARGET_RADIUS, 0, UNIT_WIDTH, 0, 0f, 1f),
+                colorTrack(TARGET_CENTER_COLOR, 0, new float[] { 0f, 1f }, new int[] { foreground, background })));
+        timeline.add(new Clip(Phase.SPEAKING, 700, EASING_ACCELERATE, END_NEXT, Phase.SPEAKING_RECOVERY,
+                FLAG_RECOVER_ON_IDLE, 1,
+                floatTrack(TARGET_RADIUS, 0, UNIT_WIDTH, 0, 0f, 1f),
+                colorTrack(TARGET_CENTER_COLOR, 0, new float[] { 0f, 1f }, new int[] { background, foreground })));
+        timeline.add(new Clip(Phase.SPEAKING_RECOVERY, 700, EASING_ACCELERATE_DECELERATE, END_NEXT, Phase.SPEAKING,
+                0, 1,
+                floatTrack(TARGET_RADIUS, 0, UNIT_WIDTH, 0, 0f, 1f),
+                colorTrack(TARGET_CENTER_COLOR, 0, new float[] { 0f, 1f }, new int[] { foreground, background })));
+        timeline.add(fadeInClip(Phase.PRIVACY, LightColors.PRIVACY));
+        timeline.add(fadeInClip(Phase.ERROR, LightColors.ERROR));
+        return timeline;
+    }
+
+    private static Clip fadeInClip(Phase phase, int color) {
+        return new Clip(phase, 300, EASING_ACCELERATE, END_STOP, null, 0, 1,
+                floatTrack(TARGET_RADIUS, 0, UNIT_WIDTH, 0, 0f, 1f),
+                colorTrack(TARGET_CENTER_COLOR, 0, new float[] { 0f, 1f },
+                        new int[] { Argb.withAlpha(color, 0), Argb.withAlpha(color, 255) }));
+    }
+
+    /**
+     * @param pairs 依次为(进度, 值)
+     */
+    private static Track floatTrack(int target, int point, int unit, float offset, float... pairs) {
+        float[] fractions = new float[pairs.length / 2];
+        float[] values = new float[pairs.length / 2];
+        for (int i = 0; i < fractions.length; i++) {
+            fractions[i] = pairs[i * 2];
+            values[i] = pairs[i * 2 + 1];
+        }
+        return new Track(target, point, unit, offset, fractions, values, new int[fractions.length]);
+    }
+
+    private static Track colorTrack(int target, int point, float[] fractions, int[] colors) {
+        return new Track(target, point, UNIT_PIXEL, 0, fractions, new float[fractions.length], colors);
+    }
+
+    /**
+     * 均匀分布的关键帧,等同于ValueAnimator.ofFloat(values)
+     */
+    private static float[] evenly(float... values) {
+        float[] pairs = new float[values.length * 2];
+        for (int i = 0; i < values.length; i++) {
+            pairs[i * 2] = values.length > 1 ? (float) i / (values.length - 1) : 0;
+            pairs[i * 2 + 1] = values[i];
+        }
+        return pairs;
+    }
+
+    static float ease(int easing, float input) {
+        switch (easing) {
+        case EASING_ACCELERATE:
+            return input * input;
+        case EASING_ACCELERATE_DECELERATE:
+            return (float) (Math.cos((input + 1) * Math.PI) / 2.0f) + 0.5f;
+        default:
+            return input;
+        }
+    }
+
+    static final class Clip {
+        final Phase phase;
+        final int durationMillis;
+        final long durationNanos;
+        final int easing;
+        final int endAction;
+        final Phase next;
+        final int flags;
+        final int pointCount;
+        final Track[] tracks;
+
+        Clip(Phase phase, int durationMillis, int easing, int endAction, Phase next, int flags, int pointCount,
+                Track... tracks) {
+            if (durationMillis <= 0) {
+                throw new IllegalArgumentException("Duration must be positive: " + phase);
+            }
+            if (pointCount < 0 || pointCount > 2) {
+                throw new IllegalArgumentException("Unsupported point count " + pointCount + ": " + phase);
+            }
+            this.phase = phase;
+            this.durationMillis = durationMillis;
+            this.durationNanos = durationMillis * 1000000L;
+            this.easing = easing;
+            this.endAction = endAction;
+            this.next = next;
+            this.flags = flags;
+            this.pointCount = pointCount;
+            this.tracks = tracks;
+            for (Track track : tracks) {
+                track.bake(easing);
+            }
+        }
+    }
+
+    static final class Track {
+        final int target;
+        final int point;
+        final int unit;
+        final float offset;
+        private final float[] fractions;
+        private final float[] values;
+        private final int[] colors;
+        private final float[] mBakedValues = new float[SAMPLES + 1];
+        private final int[] mBakedColors = new int[SAMPLES + 1];
+
+        Track(int target, int point, int unit, float offset, float[] fractions, float[] values, int[] colors) {
+            if (target < TARGET_POSITION || target > TARGET_FADE) {
+                throw new IllegalArgumentException("Unknown target: " + target);
+            }
+            if (point < 0 || point > 1) {
+                throw new IllegalArgumentException("Unknown point: " + point);
+            }
+            for (int i = 1; i < fractions.length; i++) {
+                if (fractions[i] < fractions[i - 1]) {
+                    throw new IllegalArgumentException("Keyframes out of order");
+                }
+            }
+            this.target = target;
+            this.point = point;
+            this.unit = unit;
+            this.offset = offset;
+            this.fractions = fractions;
+            this.values = values;
+            this.colors = colors;
+        }
+
+        private void bake(int easing) {
+            for (int i = 0; i <= SAMPLES; i++) {
+                float eased = ease(easing, (float) i / SAMPLES);
+                int last = fractions.length - 1;
+                int k = 0;
+                while (k < last && eased > fractions[k + 1]) {
+                    k++;
+                }
+                if (k == last || eased <= fractions[k]) {
+                    mBakedValues[i] = values[k];
+                    mBakedColors[i] = colors[k];
+                } else {
+                    float t = (eased - fractions[k]) / (fractions[k + 1] - fractions[k]);
+                    mBakedValues[i] = values[k] + (values[k + 1] - values[k]) * t;
+                    mBakedColors[i] = Argb.lerp(colors[k], colors[k + 1], t);
+                }
+            }
+        }
+
+        /**
+         * @param fraction 阶段的线性进度,[0, 1]
+         */
+        float floatAt(float fraction) {
+            float position = fraction * SAMPLES;
+            int index = (int) position;
+            if (index >= SAMPLES) {
+                return mBakedValues[SAMPLES];
+            }
+            return mBakedValues[index] + (mBakedValues[index + 1] - mBakedValues[index]) * (position - index);
+        }
+
+        /**
+         * 整个阶段中值不变
+         */
+        boolean isConstant() {
+            for (int i = 1; i <= SAMPLES; i++) {
+                if (mBakedValues[i] != mBakedValues[0] || mBakedColors[i] != mBakedColors[0]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 颜色关键帧只有透明度变化
+         */
+        boolean isAlphaOnly() {
+            for (int i = 1; i <= SAMPLES; i++) {
+                if (((mBakedColors[i] ^ mBakedColors[0]) & 0x00FFFFFF) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int colorAt(float fraction) {
+            float position = fraction * SAMPLES;
+            int index = (int) position;
+            if (index >= SAMPLES) {
+                return mBakedColors[SAMPLES];
+            }
+            return Argb.lerp(mBakedColors[index], mBakedColors[index + 1], (int) ((position - index) * 256));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.neonlight.demo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 固定大小的二进制事件环形缓冲,记录状态切换,动画的开始和取消以及每一帧的时间,由{@link TraceReplayer}离线重放
+ * <p>
+ * 每个事件是一个long:高4位类型,接着16位参数,低44位是System.nanoTime的低位.时间只保留低44位(约4.9小时),
+ * 读取时按相邻事件的先后还原,相邻两个事件间隔超过这个范围时间隔会被算短.
+ * 记录不分配内存也不加锁,可以在任意线程调用;缓冲写满后覆盖最旧的事件.
+ * <p>
+ * 文件格式(big-endian): int magic 'NLTR', short version, short 保留, int 事件数, 之后是按时间顺序的事件.
+ */
+final class TraceRecorder {
+
+    /**
+     * 调用setState,参数为{@link State#ordinal()},记录在调用线程
+     */
+    static final int EVENT_REQUEST_STATE = 1;
+    /**
+     * 调用setPrivacy,参数为1或0
+     */
+    static final int EVENT_REQUEST_PRIVACY = 2;
+    /**
+     * 状态在UI线程生效,参数为{@link State#ordinal()}
+     */
+    static final int EVENT_APPLY_STATE = 3;
+    static final int EVENT_APPLY_PRIVACY = 4;
+    /**
+     * 直接开始某个阶段的动画,参数为{@link Phase#ordinal()}
+     */
+    static final int EVENT_ANIMATION = 5;
+    /**
+     * clearAnimation
+     */
+    static final int EVENT_CLEAR = 6;
+    /**
+     * 时钟推进了一帧,时间为帧时间,参数为音量*1000,没有音量时为{@link #NO_AUDIO}
+     */
+    static final int EVENT_FRAME = 7;
+    /**
+     * 一次onDraw结束,参数为耗时(us),超过65535时截断
+     */
+    static final int EVENT_DRAW = 8;
+    static final int EVENT_CLOCK_START = 9;
+    static final int EVENT_CLOCK_STOP = 10;
+    /**
+     * 参数为宽度(px)
+     */
+    static final int EVENT_WIDTH = 11;
+    /**
+     * 参数为点的初始半径(px)
+     */
+    static final int EVENT_BASE_RADIUS = 12;
+    /**
+     * 时钟暂停,时间为暂停的时间
+     */
+    static final int EVENT_PAUSE = 13;
+    /**
+     * 恢复时状态机的时间后移,时间为恢复的时间,后移的时长是与上一个{@link #EVENT_PAUSE}的间隔.
+     * 时长可能超过参数的16位,所以不放在参数中
+     */
+    static final int EVENT_SHIFT = 14;
+
+    static final int NO_AUDIO = 0xFFFF;
+
+    static final int MAGIC = 0x4E4C5452;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 12;
+
+    static final int TIME_BITS = 44;
+    static final long TIME_MASK = (1L << TIME_BITS) - 1;
+    private static final int ARG_MASK = 0xFFFF;
+
+    /**
+     * 默认容量,64KB
+     */
+    static final int DEFAULT_CAPACITY = 8192;
+
+    private final AtomicLongArray mEvents;
+
+    private final int mMask;
+
+    /**
+     * 已经写入的事件总数,可能超过容量
+     */
+    private final AtomicInteger mCount = new AtomicInteger();
+
+    /**
+     * @param capacity 事件数,向上取2的幂
+     */
+    TraceRecorder(int capacity) {
+        int size = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+        mEvents = new AtomicLongArray(size);
+        mMask = size - 1;
+    }
+
+    void record(int type, int arg) {
+        record(type, arg, System.nanoTime());
+    }
+
+    void record(int type, int arg, long timeNanos) {
+        int index = mCount.getAndIncrement() & mMask;
+        mEvents.lazySet(index, pack(type, arg, timeNanos));
+    }
+
+    static long pack(int type, int arg, long timeNanos) {
+        return ((long) type << 60) | ((long) Math.max(0, Math.min(arg, ARG_MASK)) << TIME_BITS)
+                | (timeNanos & TIME_MASK);
+    }
+
+    static int typeOf(long event) {
+        return (int) (event >>> 60);
+    }
+
+    static int argOf(long event) {
+        return (int) (event >>> TIME_BITS) & ARG_MASK;
+    }
+
+    static long timeOf(long event) {
+        return event & TIME_MASK;
+    }
+
+    int getCapacity() {
+        return mMask + 1;
+    }
+
+    /**
+     * 写出缓冲中的事件到内存映射文件,文件已存在时覆盖.记录可以同时进行,正在写入的事件可能不完整
+     *
+     * @return 写出的事件数
+     */
+    int flush(File file) throws IOException {
+        int end = mCount.get();
+        // 溢出后按写满处理
+        int count = end < 0 || end > mMask ? mMask + 1 : end;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = HEADER_SIZE + count * 8L;
+            raf.setLength(size);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            buffer.putInt(MAGIC);
+            buffer.putShort((short) VERSION);
+            buffer.putShort((short) 0);
+            buffer.putInt(count);
+            for (int i = end - count; i != end; i++) {
+                buffer.putLong(mEvents.get(i & mMask));
+            }
+            buffer.force();
+        } finally {
+            raf.close();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,303 @@
+package com.neonlight.demo;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 在JVM上重放{@link NeonLight#flushTrace}导出的事件记录
+ * <p>
+ * 按记录的帧时间把状态切换,动画调用,暂停恢复和每一帧依次交给同一套{@link LightStateMachine},帧参数与设备上完全相同,
+ * 可以挂上profiler分析卡顿发生时的计算.报告中列出帧间隔过长的帧以及设备上记录的绘制耗时.
+ */
+public final class TraceReplayer {
+
+    /**
+     * 帧间隔超过中位数的这么多倍时记为卡顿
+     */
+    private static final float JANK_FACTOR = 1.5f;
+
+    private final int[] mTypes;
+    private final int[] mArgs;
+    /**
+     * 相对于第一个事件的时间
+     */
+    private final long[] mTimes;
+
+    private Timeline mTimeline = Timeline.getDefault();
+
+    private FrameListener mFrameListener;
+
+    private TraceReplayer(int[] types, int[] args, long[] times) {
+        mTypes = types;
+        mArgs = args;
+        mTimes = times;
+    }
+
+    public static TraceReplayer read(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+        try {
+            return read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    public static TraceReplayer read(InputStream in) throws IOException {
+        DataInputStream input = new DataInputStream(in);
+        if (input.readInt() != TraceRecorder.MAGIC) {
+            throw new IOException("Not a trace");
+        }
+        int version = input.readShort();
+        if (version != TraceRecorder.VERSION) {
+            throw new IOException("Unsupported trace version: " + version);
+        }
+        input.readShort();
+        int count = input.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid event count: " + count);
+        }
+        int[] types = new int[count];
+        int[] args = new int[count];
+        long[] times = new long[count];
+        long previous = 0;
+        long time = 0;
+        for (int i = 0; i < count; i++) {
+            long event = input.readLong();
+            types[i] = TraceRecorder.typeOf(event);
+            args[i] = TraceRecorder.argOf(event);
+            long low = TraceRecorder.timeOf(event);
+            if (i > 0) {
+                // 其他线程记录的事件可能稍微乱序,差值超过一半范围时视为倒退
+                long delta = (low - previous) & TraceRecorder.TIME_MASK;
+                if (delta > TraceRecorder.TIME_MASK / 2) {
+                    delta -= TraceRecorder.TIME_MASK + 1;
+                }
+                time += delta;
+            }
+            times[i] = time;
+            previous = low;
+        }
+        return new TraceReplayer(types, args, times);
+    }
+
+    public void setTimeline(Timeline timeline) {
+        mTimeline = timeline != null ? timeline : Timeline.getDefault();
+    }
+
+    /**
+     * 重放时每一帧推进后回调,用于与设备上的帧比较
+     */
+    void setFrameListener(FrameListener listener) {
+        mFrameListener = listener;
+    }
+
+    public int getEventCount() {
+        return mTypes.length;
+    }
+
+    /**
+     * 重放并输出报告
+     *
+     * @param realtime 是否按记录的时间间隔等待,用于在profiler中重现原来的节奏
+     */
+    public void replay(PrintStream out, boolean realtime) throws InterruptedException {
+        LightStateMachine stateMachine = new LightStateMachine(mTimeline);
+        State[] states = State.values();
+        // 较早的尺寸事件可能已经被覆盖,先使用记录中第一次出现的尺寸
+        int width = 0;
+        float baseRadius = 0;
+        for (int i = mTypes.length - 1; i >= 0; i--) {
+            if (mTypes[i] == TraceRecorder.EVENT_WIDTH) {
+                width = mArgs[i];
+            } else if (mTypes[i] == TraceRecorder.EVENT_BASE_RADIUS) {
+                baseRadius = mArgs[i];
+            }
+        }
+        stateMachine.setSize(width, baseRadius);
+        long lastFrame = -1;
+        long pausedTime = -1;
+        int frameCount = 0;
+        long advanceNanos = 0;
+        long[] intervals = new long[mTypes.length];
+        int intervalCount = 0;
+        int drawCount = 0;
+        long drawMicros = 0;
+        int maxDrawMicros = 0;
+        long wallStart = System.nanoTime();
+        for (int i = 0; i < mTypes.length; i++) {
+            if (realtime) {
+                long wait = mTimes[i] - (System.nanoTime() - wallStart);
+                if (wait > 0) {
+                    Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+                }
+            }
+            int arg = mArgs[i];
+            switch (mTypes[i]) {
+            case TraceRecorder.EVENT_WIDTH:
+                width = arg;
+                stateMachine.setSize(width, baseRadius);
+                break;
+            case TraceRecorder.EVENT_BASE_RADIUS:
+                baseRadius = arg;
+                stateMachine.setSize(width, baseRadius);
+                break;
+            case TraceRecorder.EVENT_APPLY_STATE:
+                if (arg < states.length) {
+                    stateMachine.setState(states[arg]);
+                }
+                break;
+            case TraceRecorder.EVENT_APPLY_PRIVACY:
+                stateMachine.setPrivacy(arg != 0);
+                break;
+            case TraceRecorder.EVENT_CLEAR:
+                stateMachine.clearAnimation();
+                break;
+            case TraceRecorder.EVENT_ANIMATION:
+                playAnimation(stateMachine, arg);
+                break;
+            case TraceRecorder.EVENT_FRAME:
+                stateMachine.setAudioLevel(arg == TraceRecorder.NO_AUDIO ? -1 : arg / 1000f);
+                long start = System.nanoTime();
+                stateMachine.advance(mTimes[i]);
+                advanceNanos += System.nanoTime() - start;
+                if (mFrameListener != null) {
+                    mFrameListener.onFrame(mTimes[i], stateMachine.getFrame());
+                }
+                if (lastFrame >= 0) {
+                    intervals[intervalCount++] = mTimes[i] - lastFrame;
+                }
+                lastFrame = mTimes[i];
+                frameCount++;
+                break;
+            case TraceRecorder.EVENT_DRAW:
+                drawCount++;
+                drawMicros += arg;
+                maxDrawMicros = Math.max(maxDrawMicros, arg);
+                break;
+            case TraceRecorder.EVENT_CLOCK_STOP:
+                lastFrame = -1;
+                break;
+            case TraceRecorder.EVENT_PAUSE:
+                pausedTime = mTimes[i];
+                lastFrame = -1;
+                break;
+            case TraceRecorder.EVENT_SHIFT:
+                // 暂停事件已经被覆盖时无法知道后移的时长,之前的帧也不完整,不处理
+                if (pausedTime >= 0) {
+                    stateMachine.shiftTime(mTimes[i] - pausedTime);
+                    pausedTime = -1;
+                }
+                break;
+            default:
+                break;
+            }
+        }
+        out.println(String.format(Locale.US, "%d events, %.1f ms, %d frames, advance %.2f us/frame",
+                mTypes.length, mTypes.length > 0 ? mTimes[mTypes.length - 1] / 1e6 : 0.0, frameCount,
+                frameCount > 0 ? advanceNanos / 1e3 / frameCount : 0.0));
+        out.println(String.format(Locale.US, "draw: %d, avg %.0f us, max %d us", drawCount,
+                drawCount > 0 ? (double) drawMicros / drawCount : 0.0, maxDrawMicros));
+        reportJank(out, intervals, intervalCount);
+    }
+
+    /**
+     * 列出间隔超过中位数{@link #JANK_FACTOR}倍的帧,时钟停止期间的间隔不计.帧率限制主动跳过的帧也会被列出
+     */
+    private void reportJank(PrintStream out, long[] intervals, int count) {
+        if (count == 0) {
+            return;
+        }
+        long[] sorted = Arrays.copyOf(intervals, count);
+        Arrays.sort(sorted);
+        long median = sorted[count / 2];
+        out.println(String.format(Locale.US, "frame interval: median %.2f ms, max %.2f ms", median / 1e6,
+                sorted[count - 1] / 1e6));
+        long lastFrame = -1;
+        int drawMicros = -1;
+        for (int i = 0; i < mTypes.length; i++) {
+            switch (mTypes[i]) {
+            case TraceRecorder.EVENT_FRAME:
+                if (lastFrame >= 0 && mTimes[i] - lastFrame > median * JANK_FACTOR) {
+                    out.println(String.format(Locale.US, "jank at %.1f ms: %.2f ms since last frame, last draw %d us",
+                            mTimes[i] / 1e6, (mTimes[i] - lastFrame) / 1e6, drawMicros));
+                }
+                lastFrame = mTimes[i];
+                break;
+            case TraceRecorder.EVENT_DRAW:
+                drawMicros = mArgs[i];
+                break;
+            case TraceRecorder.EVENT_CLOCK_STOP:
+            case TraceRecorder.EVENT_PAUSE:
+                lastFrame = -1;
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    private static void playAnimation(LightStateMachine stateMachine, int phase) {
+        Phase[] phases = Phase.values();
+        if (phase >= phases.length) {
+            return;
+        }
+        switch (phases[phase]) {
+        case RECOVERY:
+            stateMachine.recoveryAnimation();
+            break;
+        case START:
+            stateMachine.startAnimation();
+            break;
+        case LISTENING:
+            stateMachine.listeningAnimation();
+            break;
+        case THINKING:
+            stateMachine.thinkingAnimation();
+            break;
+        case THINKING_RECOVERY:
+            stateMachine.recoveryThinkingAnimation();
+            break;
+        case SPEAKING:
+            stateMachine.speakingAnimation();
+            break;
+        case SPEAKING_RECOVERY:
+            stateMachine.recoverySpeakingAnimation();
+            break;
+        case PRIVACY:
+            stateMachine.privacyAnimation();
+            break;
+        case ERROR:
+            stateMachine.errorAnimation();
+            break;
+        default:
+            break;
+        }
+    }
+
+    interface FrameListener {
+        /**
+         * @param timeNanos 相对于第一个事件的时间
+         * @param frame     状态机的帧,回调返回后会被下一帧覆盖
+         */
+        void onFrame(long timeNanos, Frame frame);
+    }
+
+    /**
+     * 用法: TraceReplayer 记录文件 [realtime]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: TraceReplayer <trace> [realtime]");
+            System.exit(1);
+        }
+        TraceReplayer replayer = read(new File(args[0]));
+        replayer.replay(System.out, args.length > 1 && "realtime".equals(args[1]));
+    }
+}
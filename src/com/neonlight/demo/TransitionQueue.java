@@ -0,0 +1,87 @@
+package com.neonlight.demo;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 跨线程的状态变化队列
+ * <p>
+ * 任意线程都可以写入,由绘制线程在帧开始时一次取出.两次取出之间的多次变化会合并,只保留最后的状态和privacy,
+ * 中间的状态不会被看到,也就不必为它们启动和销毁动画.状态和privacy打包在同一个int中,用CAS写入,不加锁也不分配对象.
+ */
+final class TransitionQueue {
+
+    static final int EMPTY = 0;
+
+    private static final int STATE_MASK = 0xFF;
+    private static final int PRIVACY_SHIFT = 8;
+    private static final int PRIVACY_MASK = 0x3 << PRIVACY_SHIFT;
+    private static final int PRIVACY_OFF = 1;
+    private static final int PRIVACY_ON = 2;
+
+    private static final State[] STATES = State.values();
+
+    private final AtomicInteger mPending = new AtomicInteger(EMPTY);
+
+    private final AtomicInteger mCoalescedCount = new AtomicInteger();
+
+    /**
+     * @return 写入前队列是否为空,为空时调用方需要安排一次{@link #drain}
+     */
+    boolean offerState(State state) {
+        while (true) {
+            int pending = mPending.get();
+            if (mPending.compareAndSet(pending, (pending & ~STATE_MASK) | (state.ordinal() + 1))) {
+                if ((pending & STATE_MASK) != 0) {
+                    mCoalescedCount.incrementAndGet();
+                }
+                return pending == EMPTY;
+            }
+        }
+    }
+
+    /**
+     * @return 写入前队列是否为空,为空时调用方需要安排一次{@link #drain}
+     */
+    boolean offerPrivacy(boolean isPrivacy) {
+        int value = (isPrivacy ? PRIVACY_ON : PRIVACY_OFF) << PRIVACY_SHIFT;
+        while (true) {
+            int pending = mPending.get();
+            if (mPending.compareAndSet(pending, (pending & ~PRIVACY_MASK) | value)) {
+                if ((pending & PRIVACY_MASK) != 0) {
+                    mCoalescedCount.incrementAndGet();
+                }
+                return pending == EMPTY;
+            }
+        }
+    }
+
+    /**
+     * 取出所有变化并清空队列,结果用{@link #stateOf}和{@link #hasPrivacy}/{@link #privacyOf}解析
+     */
+    int drain() {
+        return mPending.getAndSet(EMPTY);
+    }
+
+    /**
+     * @return 没有状态变化时返回null
+     */
+    static State stateOf(int drained) {
+        int state = drained & STATE_MASK;
+        return state != 0 ? STATES[state - 1] : null;
+    }
+
+    static boolean hasPrivacy(int drained) {
+        return (drained & PRIVACY_MASK) != 0;
+    }
+
+    static boolean privacyOf(int drained) {
+        return (drained & PRIVACY_MASK) >> PRIVACY_SHIFT == PRIVACY_ON;
+    }
+
+    /**
+     * 被后来的变化覆盖而没有生效的次数
+     */
+    int getCoalescedCount() {
+        return mCoalescedCount.get();
+    }
+}
@@ -0,0 +1,92 @@
+package com.neonlight.demo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 用合成的WAV文件离线回放:静音0.5秒,440Hz正弦1秒,再静音1秒
+ */
+public class AudioReplayTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int WIDTH = 720;
+    private static final float BASE_RADIUS = 180;
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void wavRoundTrip() throws IOException {
+        WavReplayer.Wav wav = synthesize();
+        File file = mFolder.newFile("tone.wav");
+        WavReplayer.write(file, wav);
+        WavReplayer.Wav read = WavReplayer.read(file);
+        assertEquals(SAMPLE_RATE, read.sampleRate);
+        assertArrayEquals(wav.samples, read.samples);
+    }
+
+    /**
+     * SPEAKING只有颜色随音量变化,静音时半径仍然是整个宽度
+     */
+    @Test
+    public void speakingKeepsRadius() throws IOException {
+        final Palette palette = Palette.DEFAULT;
+        final float[] levels = new float[3];
+        WavReplayer.replay(replayed(), State.SPEAKING, WIDTH, BASE_RADIUS, new WavReplayer.Listener() {
+            @Override
+            public void onFrame(long timeNanos, float level, Frame frame) {
+                assertEquals(WIDTH, frame.radius[0], 0.01f);
+                assertEquals(palette.backgroundToForeground(level), frame.centerColor[0]);
+                // 静音,正弦的后半段,释放之后的静音
+                long millis = timeNanos / 1000000L;
+                int index = millis < 500 ? 0 : millis >= 1000 && millis < 1500 ? 1 : millis >= 2000 ? 2 : -1;
+                if (index >= 0) {
+                    levels[index] = Math.max(levels[index], level);
+                }
+            }
+        });
+        assertEquals(0, levels[0], 0);
+        assertTrue("tone " + levels[1], levels[1] > 0.8f);
+        assertTrue("silence " + levels[2], levels[2] < 0.05f);
+    }
+
+    /**
+     * LISTENING的半径在时间轴的范围内随音量变化
+     */
+    @Test
+    public void listeningFollowsLevel() throws IOException {
+        final float[] maxLevel = new float[1];
+        WavReplayer.replay(replayed(), State.LISTENING, WIDTH, BASE_RADIUS, new WavReplayer.Listener() {
+            @Override
+            public void onFrame(long timeNanos, float level, Frame frame) {
+                float scale = LightStateMachine.AUDIO_MIN_SCALE
+                        + (LightStateMachine.AUDIO_MAX_SCALE - LightStateMachine.AUDIO_MIN_SCALE) * level;
+                assertEquals(BASE_RADIUS * scale, frame.radius[0], 0.01f);
+                maxLevel[0] = Math.max(maxLevel[0], level);
+            }
+        });
+        assertTrue("tone " + maxLevel[0], maxLevel[0] > 0.8f);
+    }
+
+    private WavReplayer.Wav replayed() throws IOException {
+        File file = mFolder.newFile();
+        WavReplayer.write(file, synthesize());
+        return WavReplayer.read(file);
+    }
+
+    private static WavReplayer.Wav synthesize() {
+        short[] samples = new short[SAMPLE_RATE * 5 / 2];
+        for (int i = SAMPLE_RATE / 2; i < SAMPLE_RATE * 3 / 2; i++) {
+            samples[i] = (short) (16000 * Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE));
+        }
+        return new WavReplayer.Wav(SAMPLE_RATE, samples);
+    }
+}
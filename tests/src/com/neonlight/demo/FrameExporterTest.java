@@ -0,0 +1,41 @@
+package com.neonlight.demo;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * 导出过程中的错误,不需要Android环境
+ */
+public class FrameExporterTest {
+
+    /**
+     * 工作线程中写文件失败时,render抛出的是同一个IOException,不是包装后的RuntimeException
+     */
+    @Test
+    public void sinkErrorIsRethrown() throws Exception {
+        final IOException error = new IOException("No space left on device");
+        FrameExporter exporter = new FrameExporter(64, 8, 60, 16);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        exporter.setPool(pool);
+        try {
+            exporter.render(State.values(), 32, new FrameExporter.FrameSink() {
+                @Override
+                public void onFrame(State state, int index, int[] pixels, int width, int height) throws IOException {
+                    if (state == State.THINKING && index == 20) {
+                        throw error;
+                    }
+                }
+            });
+            fail("IOException not thrown");
+        } catch (IOException e) {
+            assertSame(error, e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.neonlight.demo;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+
+/**
+ * 按固定的状态序列推进状态机,每100ms记录一帧,与tests/res/golden_frames.txt比较
+ * <p>
+ * 只依赖不引用Android的核心类,在普通JVM上运行.有意修改动画后用-Dneonlight.updateGolden=true运行一次重新生成,
+ * 并在提交中检查文件的差异
+ */
+public class GoldenFrameTest {
+
+    private static final File GOLDEN = new File(System.getProperty("neonlight.golden", "tests/res/golden_frames.txt"));
+
+    private static final int WIDTH = 720;
+    private static final long FRAME_NANOS = 16666667L;
+    private static final long SAMPLE_NANOS = 100000000L;
+
+    @Test
+    public void framesMatchGolden() throws IOException {
+        String actual = record();
+        if (Boolean.getBoolean("neonlight.updateGolden")) {
+            Files.write(GOLDEN.toPath(), actual.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        String expected = new String(Files.readAllBytes(GOLDEN.toPath()), StandardCharsets.UTF_8);
+        String[] expectedLines = expected.split("\n");
+        String[] actualLines = actual.split("\n");
+        for (int i = 0; i < Math.min(expectedLines.length, actualLines.length); i++) {
+            assertEquals("line " + (i + 1), expectedLines[i], actualLines[i]);
+        }
+        assertEquals(expectedLines.length, actualLines.length);
+    }
+
+    private static String record() {
+        LightStateMachine stateMachine = new LightStateMachine(Timeline.getDefault());
+        stateMachine.setSize(WIDTH, WIDTH / 4f);
+        StringBuilder out = new StringBuilder();
+        long time = 0;
+        Object[][] steps = {
+                { State.START, 1500 }, { State.IDLE, 500 },
+                { State.LISTENING, 1500 }, { State.THINKING, 2000 }, { State.SPEAKING, 2000 },
+                { State.IDLE, 1000 }, { State.ERROR, 1500 }, { State.IDLE, 1000 },
+                { State.LISTENING, 300 }, { State.THINKING, 300 }, { State.IDLE, 1000 },
+        };
+        for (Object[] step : steps) {
+            State state = (State) step[0];
+            stateMachine.setState(state);
+            time = play(stateMachine, state.name(), time, (Integer) step[1], out);
+        }
+        stateMachine.setPrivacy(true);
+        time = play(stateMachine, "PRIVACY", time, 1000, out);
+        stateMachine.setPrivacy(false);
+        play(stateMachine, "PRIVACY_OFF", time, 1000, out);
+        return out.toString();
+    }
+
+    private static long play(LightStateMachine stateMachine, String label, long start, int millis,
+            StringBuilder out) {
+        long end = start + millis * 1000000L;
+        long time = start;
+        for (; time < end; time += FRAME_NANOS) {
+            stateMachine.advance(time);
+            if ((time - start) / SAMPLE_NANOS != (time + FRAME_NANOS - start) / SAMPLE_NANOS) {
+                append(out, label, (time - start) / 1000000L, stateMachine.getFrame());
+            }
+        }
+        return time;
+    }
+
+    private static void append(StringBuilder out, String label, long millis, Frame frame) {
+        out.append(String.format(Locale.US, "%s %d animating=%b split=%b fill=%08x", label, millis,
+                frame.animating, frame.split, frame.fillColor));
+        if (frame.animating) {
+            for (int i = 0; i < frame.pointCount; i++) {
+                out.append(String.format(Locale.US, " [%.4f %.2f %08x %08x]", frame.position[i], frame.radius[i],
+                        frame.centerColor[i], frame.edgeColor[i]));
+            }
+        }
+        out.append('\n');
+    }
+}
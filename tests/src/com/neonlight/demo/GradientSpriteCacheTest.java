@@ -0,0 +1,101 @@
+package com.neonlight.demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, manifest = Config.NONE)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class GradientSpriteCacheTest {
+
+    private static final int WIDTH = 720;
+    private static final int HEIGHT = 24;
+    private static final long FRAME_NANOS = 16666667L;
+
+    @Before
+    public void setUp() {
+        GradientSpriteCache.getInstance().evictAll();
+    }
+
+    /**
+     * 颜色逐帧变化的状态第二次播放时全部命中缓存
+     */
+    @Test
+    public void colorAnimationsHitCache() {
+        LightStateMachine stateMachine = new LightStateMachine(Timeline.getDefault());
+        stateMachine.setSize(WIDTH, WIDTH / 4f);
+        ShaderBank bank = new ShaderBank(Frame.EDGE_STOPS);
+        bank.prewarm(Palette.DEFAULT);
+        LightRenderer renderer = new LightRenderer(bank);
+        renderer.setRenderMode(NeonLight.RENDER_MODE_SPRITE);
+        Canvas canvas = new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+        long time = 0;
+        int firstPass = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            int before = renderer.getShaderAllocationCount();
+            for (State state : new State[] { State.LISTENING, State.THINKING, State.SPEAKING, State.IDLE }) {
+                stateMachine.setState(state);
+                for (long end = time + 3000 * 1000000L; time < end; time += FRAME_NANOS) {
+                    stateMachine.advance(time);
+                    renderer.draw(canvas, stateMachine.getFrame(), WIDTH, HEIGHT);
+                }
+            }
+            if (pass == 0) {
+                firstPass = renderer.getShaderAllocationCount() - before;
+            } else {
+                assertEquals(0, renderer.getShaderAllocationCount() - before);
+            }
+        }
+        // 颜色每帧都在变化,缓存数量只与半径档位有关
+        assertTrue("rasterized " + firstPass, firstPass <= 40);
+    }
+
+    /**
+     * 遮罩着色的结果与直接使用RadialGradient接近,差别主要来自半径档位
+     */
+    @Test
+    public void matchesShader() {
+        LightStateMachine stateMachine = new LightStateMachine(Timeline.getDefault());
+        stateMachine.setSize(WIDTH, WIDTH / 4f);
+        Bitmap sprite = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        Bitmap shader = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        LightRenderer spriteRenderer = new LightRenderer(new ShaderBank(Frame.EDGE_STOPS));
+        spriteRenderer.setRenderMode(NeonLight.RENDER_MODE_SPRITE);
+        LightRenderer shaderRenderer = new LightRenderer(new ShaderBank(Frame.EDGE_STOPS));
+        long time = 0;
+        for (State state : new State[] { State.LISTENING, State.THINKING, State.SPEAKING }) {
+            stateMachine.setState(state);
+            for (long end = time + 1000 * 1000000L; time < end; time += FRAME_NANOS) {
+                stateMachine.advance(time);
+                sprite.eraseColor(0);
+                shader.eraseColor(0);
+                spriteRenderer.draw(new Canvas(sprite), stateMachine.getFrame(), WIDTH, HEIGHT);
+                shaderRenderer.draw(new Canvas(shader), stateMachine.getFrame(), WIDTH, HEIGHT);
+                int difference = maxDifference(sprite, shader);
+                assertTrue(state + " differs by " + difference, difference <= 32);
+            }
+        }
+    }
+
+    private static int maxDifference(Bitmap a, Bitmap b) {
+        int max = 0;
+        for (int x = 0; x < WIDTH; x++) {
+            int colorA = a.getPixel(x, HEIGHT / 2);
+            int colorB = b.getPixel(x, HEIGHT / 2);
+            for (int shift = 0; shift < 32; shift += 8) {
+                max = Math.max(max, Math.abs(((colorA >>> shift) & 0xFF) - ((colorB >>> shift) & 0xFF)));
+            }
+        }
+        return max;
+    }
+}
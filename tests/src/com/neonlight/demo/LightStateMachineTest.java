@@ -0,0 +1,72 @@
+package com.neonlight.demo;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * 状态机的时间处理,不需要Android环境
+ */
+public class LightStateMachineTest {
+
+    private static final int WIDTH = 720;
+    private static final long FRAME_NANOS = 16666667L;
+    private static final long PAUSE_NANOS = 60 * 1000000000L;
+
+    /**
+     * 暂停60秒后恢复,每一帧都与没有暂停时一致,包括从LISTENING到THINKING的过渡
+     */
+    @Test
+    public void resumesWherePaused() {
+        for (State state : new State[] { State.LISTENING, State.THINKING, State.SPEAKING, State.ERROR }) {
+            LightStateMachine expected = newStateMachine();
+            LightStateMachine paused = newStateMachine();
+            long time = 0;
+            for (; time < 1000 * 1000000L; time += FRAME_NANOS) {
+                expected.advance(time);
+                paused.advance(time);
+            }
+            expected.setState(state);
+            paused.setState(state);
+            for (long end = time + 100 * 1000000L; time < end; time += FRAME_NANOS) {
+                expected.advance(time);
+                paused.advance(time);
+            }
+            paused.shiftTime(PAUSE_NANOS);
+            for (long end = time + 3000 * 1000000L; time < end; time += FRAME_NANOS) {
+                expected.advance(time);
+                paused.advance(time + PAUSE_NANOS);
+                assertEquals(state + " at " + time / 1000000L + "ms", 0,
+                        paused.getFrame().diff(expected.getFrame(), WIDTH));
+            }
+        }
+    }
+
+    /**
+     * 第一次布局之前进入START,尺寸确定后与先布局再进入START的画面一致
+     */
+    @Test
+    public void startBeforeSize() {
+        LightStateMachine early = new LightStateMachine(Timeline.getDefault());
+        early.setState(State.START);
+        early.advance(0);
+        early.setSize(WIDTH, WIDTH / 4f);
+        LightStateMachine expected = new LightStateMachine(Timeline.getDefault());
+        expected.setSize(WIDTH, WIDTH / 4f);
+        expected.setState(State.START);
+        expected.advance(0);
+        for (long time = FRAME_NANOS; time < 1000 * 1000000L; time += FRAME_NANOS) {
+            early.advance(time);
+            expected.advance(time);
+            assertEquals("START at " + time / 1000000L + "ms", 0, early.getFrame().diff(expected.getFrame(), WIDTH));
+        }
+        assertEquals(WIDTH / 4f, early.getFrame().radius[0], 0);
+    }
+
+    private static LightStateMachine newStateMachine() {
+        LightStateMachine stateMachine = new LightStateMachine(Timeline.getDefault());
+        stateMachine.setSize(WIDTH, WIDTH / 4f);
+        stateMachine.setState(State.LISTENING);
+        return stateMachine;
+    }
+}
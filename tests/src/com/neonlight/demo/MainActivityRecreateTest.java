@@ -0,0 +1,93 @@
+package com.neonlight.demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 反复重建MainActivity,引擎,共享ShaderBank和渐变条缓存都不随次数增长,之前的Activity可以被回收
+ * <p>
+ * 需要应用的资源(布局中的NeonLight),每次重建后开始THINKING并用SPRITE模式绘制750ms
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class MainActivityRecreateTest {
+
+    private static final int RECREATE_COUNT = 300;
+    private static final int FRAME_MILLIS = 16;
+    private static final long FRAME_NANOS = 16666667L;
+    /**
+     * THINKING开始后圆心颜色有一段时间半透明,不使用渐变条,画满750ms
+     */
+    private static final int FRAMES = 45;
+
+    @Test
+    public void recreateDoesNotLeak() throws InterruptedException {
+        NeonLightEngine engine = NeonLightEngine.getInstance();
+        GradientSpriteCache sprites = GradientSpriteCache.getInstance();
+        ActivityController<MainActivity> controller = Robolectric.buildActivity(MainActivity.class).setup();
+        WeakReference<Activity> first = new WeakReference<Activity>(controller.get());
+        int spriteBytes = -1;
+        long time = 0;
+        for (int i = 0; i < RECREATE_COUNT; i++) {
+            if (i > 0) {
+                controller.recreate();
+            }
+            time = animate(engine, controller.get(), time);
+            assertEquals("clients after " + i, 1, engine.getClientCount());
+            assertEquals("bank users after " + i, 1, engine.getShaderBankUserCount());
+            if (spriteBytes < 0) {
+                spriteBytes = sprites.sizeBytes();
+                assertTrue(spriteBytes > 0);
+            }
+            // 尺寸不变,每次都命中同一份渐变条
+            assertEquals("sprite bytes after " + i, spriteBytes, sprites.sizeBytes());
+        }
+        controller.pause().stop().destroy();
+        ShadowLooper.idleMainLooper(FRAME_MILLIS, TimeUnit.MILLISECONDS);
+        assertEquals(0, engine.getClientCount());
+        assertEquals(0, engine.getShaderBankUserCount());
+        assertTrue(sprites.sizeBytes() <= sprites.maxBytes());
+
+        controller = null;
+        for (int i = 0; i < 20 && first.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull("first MainActivity still reachable", first.get());
+    }
+
+    /**
+     * 持续的动画会让主线程的idle不返回,这里不推进主线程,由测试直接驱动引擎并绘制每一帧.
+     * 暂停Choreographer时recreate无法让新的window显示,所以不使用暂停
+     */
+    private static long animate(NeonLightEngine engine, Activity activity, long time) {
+        NeonLight light = (NeonLight) activity.findViewById(R.id.light);
+        light.setRenderMode(NeonLight.RENDER_MODE_SPRITE);
+        light.setState(State.THINKING);
+        Canvas canvas = new Canvas(Bitmap.createBitmap(light.getWidth(), light.getHeight(), Bitmap.Config.ARGB_8888));
+        for (int i = 0; i < FRAMES; i++) {
+            time += FRAME_NANOS;
+            engine.doFrame(time);
+            light.draw(canvas);
+        }
+        return time;
+    }
+}
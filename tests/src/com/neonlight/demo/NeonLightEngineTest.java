@@ -0,0 +1,137 @@
+package com.neonlight.demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Activity;
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Locale;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, manifest = Config.NONE)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class NeonLightEngineTest {
+
+    private static final int WIDTH = 720;
+    private static final int HEIGHT = 24;
+    private static final long FRAME_NANOS = 16666667L;
+    private static final int FRAMES = 120;
+
+    /**
+     * 1到16个实例由同一个引擎驱动,测量每帧推进和绘制的耗时
+     * <p>
+     * Shader由所有实例共享,单个实例的耗时不应该随实例数增加.输出每个实例数下每帧的中位数耗时
+     */
+    @Test
+    public void scaling() {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        NeonLightEngine engine = NeonLightEngine.getInstance();
+        Canvas canvas = new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+        int[] counts = { 1, 2, 4, 8, 16 };
+        double[] perView = new double[counts.length];
+        long time = 0;
+        for (int c = 0; c < counts.length; c++) {
+            int count = counts[c];
+            LinearLayout layout = new LinearLayout(activity);
+            layout.setOrientation(LinearLayout.VERTICAL);
+            NeonLight[] lights = new NeonLight[count];
+            for (int i = 0; i < count; i++) {
+                lights[i] = new NeonLight(activity);
+                layout.addView(lights[i], new LinearLayout.LayoutParams(WIDTH, HEIGHT));
+            }
+            activity.setContentView(layout, new ViewGroup.LayoutParams(WIDTH, ViewGroup.LayoutParams.MATCH_PARENT));
+            ShadowLooper.idleMainLooper();
+            // 动画开始后不再让主线程的Choreographer执行,每一帧由下面直接调用
+            for (NeonLight light : lights) {
+                light.setState(State.THINKING);
+            }
+            assertEquals(count, engine.getClientCount());
+
+            long[] frameNanos = new long[FRAMES];
+            for (int frame = -FRAMES; frame < FRAMES; frame++) {
+                time += FRAME_NANOS;
+                long start = System.nanoTime();
+                engine.doFrame(time);
+                for (NeonLight light : lights) {
+                    light.draw(canvas);
+                }
+                if (frame >= 0) {
+                    frameNanos[frame] = System.nanoTime() - start;
+                }
+            }
+            assertEquals(count, engine.getClientCount());
+            Arrays.sort(frameNanos);
+            perView[c] = frameNanos[FRAMES / 2] / 1000.0 / count;
+            System.out.println(String.format(Locale.US, "NeonLightEngine %2d views: %8.1f us/frame, %6.1f us/view",
+                    count, frameNanos[FRAMES / 2] / 1000.0, perView[c]));
+        }
+        activity.setContentView(new LinearLayout(activity));
+        ShadowLooper.idleMainLooper();
+        assertEquals(0, engine.getClientCount());
+        assertTrue("per view " + perView[counts.length - 1] + " vs " + perView[0],
+                perView[counts.length - 1] < perView[0] * 2);
+    }
+
+    /**
+     * 一个实例detach或者收到内存警告时只归还自己的引用,不清空其他实例正在用的共享ShaderBank;
+     * 最后一个实例归还后引擎不再持有,可以被回收
+     */
+    @Test
+    public void sharedShaderBankReleasedWithLastUser() throws InterruptedException {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        NeonLightEngine engine = NeonLightEngine.getInstance();
+        assertEquals(0, engine.getShaderBankUserCount());
+        LinearLayout layout = new LinearLayout(activity);
+        layout.setOrientation(LinearLayout.VERTICAL);
+        NeonLight first = new NeonLight(activity);
+        NeonLight second = new NeonLight(activity);
+        layout.addView(first, new LinearLayout.LayoutParams(WIDTH, HEIGHT));
+        layout.addView(second, new LinearLayout.LayoutParams(WIDTH, HEIGHT));
+        activity.setContentView(layout, new ViewGroup.LayoutParams(WIDTH, ViewGroup.LayoutParams.MATCH_PARENT));
+        ShadowLooper.idleMainLooper();
+        assertEquals(2, engine.getShaderBankUserCount());
+        ShaderBank bank = engine.getSharedShaderBank();
+        assertNotNull(bank);
+        int size = bank.size();
+        assertTrue(size > 0);
+
+        layout.removeView(first);
+        ShadowLooper.idleMainLooper();
+        assertEquals(1, engine.getShaderBankUserCount());
+        assertSame(bank, engine.getSharedShaderBank());
+        assertEquals(size, bank.size());
+
+        activity.getApplication().onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(0, engine.getShaderBankUserCount());
+        assertNull(engine.getSharedShaderBank());
+
+        activity.setContentView(new LinearLayout(activity));
+        ShadowLooper.idleMainLooper();
+        assertEquals(0, engine.getShaderBankUserCount());
+        WeakReference<ShaderBank> reference = new WeakReference<ShaderBank>(bank);
+        bank = null;
+        for (int i = 0; i < 20 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull("ShaderBank still reachable", reference.get());
+    }
+}
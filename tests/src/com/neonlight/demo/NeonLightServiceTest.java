@@ -0,0 +1,122 @@
+package com.neonlight.demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Messenger;
+import android.os.RemoteException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ServiceController;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+import org.robolectric.shadows.ShadowChoreographer;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 客户端通过Messenger发送状态到画出这一帧的延迟
+ * <p>
+ * 客户端直接使用onBind返回的Binder,与同进程的客户端相同,跨进程的Binder调用不在测量范围内.
+ * Choreographer暂停后每次推进时钟FRAME_MILLIS出一帧;Robolectric的悬浮窗没有Surface,不会真正绘制,
+ * 每帧之后由测试绘制需要重绘的view.断言的是消息要等几帧才显示;输出的毫秒数来自{@link NeonLightMetrics},
+ * 包含Robolectric推进主线程的开销,只作参考.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, manifest = Config.NONE)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class NeonLightServiceTest {
+
+    private static final int FRAME_MILLIS = 16;
+    private static final int TRANSITIONS = 60;
+
+    /**
+     * 接收线程交出的状态在下一个vsync的动画回调中生效,引擎在再下一帧推进;
+     * 交叉淡入的第一帧权重为0,与之前的画面相同,第三帧才有可见变化
+     */
+    private static final int MAX_FRAMES = 3;
+
+    private Duration mFrameDelay;
+
+    private ServiceController<NeonLightService> mController;
+
+    @Before
+    public void setUp() {
+        mFrameDelay = ShadowChoreographer.getFrameDelay();
+        ShadowChoreographer.setPaused(true);
+        ShadowChoreographer.setFrameDelay(Duration.ofMillis(FRAME_MILLIS));
+        mController = Robolectric.buildService(NeonLightService.class).create();
+    }
+
+    @After
+    public void tearDown() {
+        mController.destroy();
+        ShadowChoreographer.setPaused(false);
+        ShadowChoreographer.setFrameDelay(mFrameDelay);
+    }
+
+    /**
+     * 每条消息在收到后的第三帧之内画出
+     */
+    @Test
+    public void postToFrameLatency() throws Exception {
+        NeonLightService service = mController.get();
+        NeonLight light = service.getLight();
+        light.setMetricsEnabled(true);
+        Messenger client = new Messenger(service.onBind(new Intent(service, NeonLightService.class)));
+        // 第一次布局
+        ShadowLooper.idleMainLooper(FRAME_MILLIS * 4, TimeUnit.MILLISECONDS);
+        Canvas canvas = new Canvas(Bitmap.createBitmap(light.getWidth(), light.getHeight(), Bitmap.Config.ARGB_8888));
+        idleFrames(light, canvas, 1);
+
+        int maxFrames = 0;
+        for (int i = 0; i < TRANSITIONS; i++) {
+            State state = i % 2 == 0 ? State.LISTENING : State.THINKING;
+            int transitions = light.getMetrics().snapshot().getTransitionCount();
+            send(client, service, state);
+            int frames = 0;
+            while (light.getMetrics().snapshot().getTransitionCount() == transitions) {
+                assertTrue(state + " not drawn", frames < 10);
+                idleFrames(light, canvas, 1);
+                frames++;
+            }
+            maxFrames = Math.max(maxFrames, frames);
+        }
+        NeonLightMetrics.Snapshot snapshot = light.getMetrics().snapshot();
+        System.out.println(String.format(Locale.US,
+                "NeonLightService post to frame: max %d frames, p50 %.1f ms, p99 %.1f ms", maxFrames,
+                snapshot.getTransitionLatencyMicros(50) / 1000.0, snapshot.getTransitionLatencyMicros(99) / 1000.0));
+        assertEquals(TRANSITIONS, snapshot.getTransitionCount());
+        assertTrue("max " + maxFrames + " frames", maxFrames <= MAX_FRAMES);
+    }
+
+    /**
+     * 发送消息并等待接收线程处理完,状态已经交给NeonLight
+     */
+    private static void send(Messenger client, NeonLightService service, State state) throws RemoteException {
+        client.send(NeonLightService.obtainStateMessage(state));
+        shadowOf(service.getReceiveLooper()).idle();
+        assertEquals(state, service.getLight().getState());
+    }
+
+    private static void idleFrames(NeonLight light, Canvas canvas, int count) {
+        for (int i = 0; i < count; i++) {
+            ShadowLooper.idleMainLooper(FRAME_MILLIS, TimeUnit.MILLISECONDS);
+            if (light.isDirty()) {
+                light.draw(canvas);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.neonlight.demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+import org.robolectric.shadows.ShadowChoreographer;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 从创建view到画出START第一帧的耗时,即{@link NeonLight#getStartupLatencyNanos}
+ * <p>
+ * 与宿主常见的用法一样在布局之前setState(START).Robolectric的window没有Surface,布局后由测试绘制.
+ * 第一次创建时包含类加载和等待后台预热,之后的实例只有构造,布局和绘制本身
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, manifest = Config.NONE)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class NeonLightStartupTest {
+
+    private static final int WIDTH = 720;
+    private static final int HEIGHT = 24;
+    private static final int FRAME_MILLIS = 16;
+    private static final int RUNS = 20;
+
+    private Duration mFrameDelay;
+
+    @Before
+    public void setUp() {
+        mFrameDelay = ShadowChoreographer.getFrameDelay();
+        ShadowChoreographer.setPaused(true);
+        ShadowChoreographer.setFrameDelay(Duration.ofMillis(FRAME_MILLIS));
+    }
+
+    @After
+    public void tearDown() {
+        ShadowChoreographer.setPaused(false);
+        ShadowChoreographer.setFrameDelay(mFrameDelay);
+    }
+
+    @Test
+    public void startupLatency() {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        Canvas canvas = new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+        long first = 0;
+        long total = 0;
+        for (int run = 0; run < RUNS; run++) {
+            NeonLight light = new NeonLight(activity);
+            light.setState(State.START);
+            activity.setContentView(light, new ViewGroup.LayoutParams(WIDTH, HEIGHT));
+            ShadowLooper.idleMainLooper(FRAME_MILLIS, TimeUnit.MILLISECONDS);
+            light.draw(canvas);
+            long latency = light.getStartupLatencyNanos();
+            assertTrue(latency > 0);
+            if (run == 0) {
+                first = latency;
+            } else {
+                total += latency;
+            }
+        }
+        System.out.println(String.format(Locale.US,
+                "NeonLight startup to first START frame: first %.2f ms, then %.2f ms", first / 1000000.0,
+                total / 1000000.0 / (RUNS - 1)));
+        activity.setContentView(new FrameLayout(activity));
+        ShadowLooper.idleMainLooper(FRAME_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 布局之前进入START,第一帧的两个点已经有半径,中间是前景色;半径为0时整个view都是背景色
+     */
+    @Test
+    public void startBeforeLayoutDraws() {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        NeonLight light = new NeonLight(activity);
+        light.setState(State.START);
+        activity.setContentView(light, new ViewGroup.LayoutParams(WIDTH, HEIGHT));
+        ShadowLooper.idleMainLooper(FRAME_MILLIS, TimeUnit.MILLISECONDS);
+        Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        light.draw(new Canvas(bitmap));
+        assertEquals(NeonLight.COLOR_FOREGROUND, bitmap.getPixel(WIDTH / 2, HEIGHT / 2));
+    }
+}
@@ -0,0 +1,77 @@
+package com.neonlight.demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Activity;
+import android.view.SurfaceHolder;
+import android.view.ViewGroup;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.TimeUnit;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, manifest = Config.NONE)
+public class NeonLightSurfaceTest {
+
+    private static final int WIDTH = 720;
+    private static final int HEIGHT = 24;
+
+    /**
+     * 默认配色和点的半径与NeonLight一致,半径可以单独设置
+     */
+    @Test
+    public void matchesNeonLightDefaults() {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        NeonLightSurface surface = new NeonLightSurface(activity);
+        NeonLight light = new NeonLight(activity);
+
+        assertEquals(light.getPalette(), surface.getPalette());
+        assertEquals(light.getPointRadius(), surface.getPointRadius());
+        surface.setPointRadius(40);
+        assertEquals(40, surface.getPointRadius());
+    }
+
+    /**
+     * 模拟UI线程持续繁忙:NeonLight在这期间一帧都不会更新,NeonLightSurface的渲染线程继续出帧
+     */
+    @Test
+    public void keepsRenderingWhileUiThreadBusy() throws Exception {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        NeonLight light = new NeonLight(activity);
+        light.setMetricsEnabled(true);
+        NeonLightSurface surface = new NeonLightSurface(activity);
+        activity.setContentView(light, new ViewGroup.LayoutParams(WIDTH, HEIGHT));
+        activity.addContentView(surface, new ViewGroup.LayoutParams(WIDTH, HEIGHT));
+        SurfaceHolder holder = surface.getHolder();
+        surface.surfaceCreated(holder);
+        surface.surfaceChanged(holder, 0, WIDTH, HEIGHT);
+        light.setState(State.THINKING);
+        surface.setState(State.THINKING);
+        ShadowLooper.idleMainLooper(100, TimeUnit.MILLISECONDS);
+        try {
+            int lightFrames = light.getMetrics().snapshot().getRefreshCount();
+            int surfaceFrames = surface.getFrameCount();
+            busy(1000);
+            int lightBusyFrames = light.getMetrics().snapshot().getRefreshCount() - lightFrames;
+            int surfaceBusyFrames = surface.getFrameCount() - surfaceFrames;
+            assertEquals(0, lightBusyFrames);
+            assertTrue(surfaceBusyFrames > 0);
+        } finally {
+            surface.surfaceDestroyed(holder);
+        }
+    }
+
+    private static void busy(long millis) {
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+}
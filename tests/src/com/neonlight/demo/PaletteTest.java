@@ -0,0 +1,34 @@
+package com.neonlight.demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class PaletteTest {
+
+    private static final Palette PALETTE = new Palette(0xFF00FF00, 0x4000FF00, 0xFFFF0000, 0xFF0000FF);
+
+    /**
+     * 两个view用同一套配色和不同的时间轴交替绑定时,各自的结果都保留在缓存中
+     */
+    @Test
+    public void bindCachesEveryTimeline() {
+        Timeline first = Timeline.getDefault();
+        Timeline second = first.withColors(Palette.DEFAULT);
+        Timeline boundFirst = PALETTE.bind(first);
+        Timeline boundSecond = PALETTE.bind(second);
+        assertNotSame(boundFirst, boundSecond);
+        assertSame(boundFirst, PALETTE.bind(first));
+        assertSame(boundSecond, PALETTE.bind(second));
+    }
+
+    @Test
+    public void mapKeepsAlpha() {
+        assertEquals(0xFF00FF00, PALETTE.map(LightColors.FOREGROUND));
+        assertEquals(0x8000FF00, PALETTE.map(Argb.withAlpha(LightColors.FOREGROUND, 0x80)));
+        assertEquals(0x80FF0000, PALETTE.map(Argb.withAlpha(LightColors.ERROR, 0x80)));
+        assertEquals(0x800000FF, PALETTE.map(Argb.withAlpha(LightColors.PRIVACY, 0x80)));
+    }
+}
@@ -0,0 +1,45 @@
+package com.neonlight.demo;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+public class PngEncoderTest {
+
+    /**
+     * 同一个实例连续编码,用ImageIO解码后与原始像素一致
+     */
+    @Test
+    public void roundTrip() throws IOException {
+        PngEncoder encoder = new PngEncoder();
+        SoftwareRasterizer rasterizer = new SoftwareRasterizer();
+        LightStateMachine stateMachine = new LightStateMachine(Timeline.getDefault());
+        int width = 360;
+        int height = 12;
+        stateMachine.setSize(width, width / 4f);
+        int[] pixels = new int[width * height];
+        for (State state : new State[] { State.START, State.THINKING, State.ERROR }) {
+            stateMachine.setState(state);
+            stateMachine.advance(0);
+            stateMachine.advance(200000000L);
+            rasterizer.draw(stateMachine.getFrame(), width, height, pixels);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            encoder.encode(pixels, width, height, out);
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+            assertEquals(width, image.getWidth());
+            assertEquals(height, image.getHeight());
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    assertEquals(state + " " + x + "," + y, pixels[y * width + x], image.getRGB(x, y));
+                }
+            }
+        }
+    }
+}
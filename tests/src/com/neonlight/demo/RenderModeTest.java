@@ -0,0 +1,146 @@
+package com.neonlight.demo;
+
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+/**
+ * 各个渲染模式与SHADER的画面对比.Robolectric的NATIVE模式使用Skia的CPU光栅化.
+ * STRIP每帧在CPU上的计算见benchmarks中的SoftwareRasterizerBenchmark
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, manifest = Config.NONE)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class RenderModeTest {
+
+    private static final int WIDTH = 720;
+    private static final int HEIGHT = 24;
+    private static final long FRAME_NANOS = 16666667L;
+
+    private static final int TOLERANCE_RASTERIZER = 6;
+
+    /**
+     * 渐变条按半径档位缓存,半径最多相差1/32,渐变边缘附近差别较大
+     */
+    private static final int TOLERANCE_SPRITE = 32;
+
+    /**
+     * 不经过LightRenderer,直接用SoftwareRasterizer计算整个view
+     */
+    private static final int RASTERIZER = -1;
+
+    private static final State[] STATES = { State.START, State.LISTENING, State.THINKING, State.SPEAKING,
+            State.ERROR };
+
+    /**
+     * STRIP每帧只计算中间一行:中间两行与RadialGradient基本一致,上下边缘因为忽略了纵向的变化差别稍大
+     */
+    @Test
+    public void stripMatchesShader() {
+        assertMatches(NeonLight.RENDER_MODE_STRIP, 0, HEIGHT, 16);
+        assertMatches(NeonLight.RENDER_MODE_STRIP, HEIGHT / 2 - 1, HEIGHT / 2 + 1, 6);
+    }
+
+    /**
+     * SoftwareRasterizer逐像素计算整个view,与RadialGradient的差别只有插值权重量化的误差
+     */
+    @Test
+    public void rasterizerMatchesShader() {
+        assertMatches(RASTERIZER, 0, HEIGHT, TOLERANCE_RASTERIZER);
+    }
+
+    @Test
+    public void spriteMatchesShader() {
+        assertMatches(NeonLight.RENDER_MODE_SPRITE, 0, HEIGHT, TOLERANCE_SPRITE);
+    }
+
+    /**
+     * 软件绘制的canvas不支持RuntimeShader,退回SHADER后与SHADER完全一致
+     */
+    @Test
+    public void runtimeShaderFallsBackOnSoftwareCanvas() {
+        assertMatches(NeonLight.RENDER_MODE_RUNTIME_SHADER, 0, HEIGHT, 0);
+    }
+
+    /**
+     * 逐帧比较mode与SHADER在[top, bottom)行中的像素
+     *
+     * @param tolerance 每个通道允许的最大差别
+     */
+    private static void assertMatches(int mode, int top, int bottom, int tolerance) {
+        Renderer expected = new Renderer(NeonLight.RENDER_MODE_SHADER);
+        Renderer actual = new Renderer(mode);
+        LightStateMachine stateMachine = newStateMachine();
+        long time = 0;
+        for (State state : STATES) {
+            stateMachine.setState(state);
+            for (long end = time + 1500 * 1000000L; time < end; time += FRAME_NANOS) {
+                stateMachine.advance(time);
+                expected.draw(stateMachine.getFrame());
+                actual.draw(stateMachine.getFrame());
+                int difference = maxDifference(expected.bitmap, actual.bitmap, top, bottom);
+                assertTrue(state + " at " + time / 1000000L + "ms differs by " + difference,
+                        difference <= tolerance);
+            }
+        }
+    }
+
+    private static LightStateMachine newStateMachine() {
+        LightStateMachine stateMachine = new LightStateMachine(Timeline.getDefault());
+        stateMachine.setSize(WIDTH, WIDTH / 4f);
+        return stateMachine;
+    }
+
+    /**
+     * [top, bottom)行中每个通道的最大差别
+     */
+    private static int maxDifference(Bitmap a, Bitmap b, int top, int bottom) {
+        int max = 0;
+        for (int y = top; y < bottom; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int colorA = a.getPixel(x, y);
+                int colorB = b.getPixel(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    max = Math.max(max, Math.abs(((colorA >>> shift) & 0xFF) - ((colorB >>> shift) & 0xFF)));
+                }
+            }
+        }
+        return max;
+    }
+
+    private static final class Renderer {
+        final LightRenderer renderer = new LightRenderer(new ShaderBank(Frame.EDGE_STOPS));
+        final Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(bitmap);
+        final SoftwareRasterizer rasterizer;
+        final int[] pixels;
+
+        Renderer(int mode) {
+            if (mode == RASTERIZER) {
+                rasterizer = new SoftwareRasterizer();
+                pixels = new int[WIDTH * HEIGHT];
+            } else {
+                rasterizer = null;
+                pixels = null;
+                renderer.setRenderMode(mode);
+            }
+        }
+
+        void draw(Frame frame) {
+            if (rasterizer != null) {
+                rasterizer.draw(frame, WIDTH, HEIGHT, pixels);
+                bitmap.setPixels(pixels, 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+                return;
+            }
+            bitmap.eraseColor(0);
+            renderer.draw(canvas, frame, WIDTH, HEIGHT);
+        }
+    }
+}
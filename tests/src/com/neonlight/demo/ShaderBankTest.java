@@ -0,0 +1,114 @@
+package com.neonlight.demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.lang.management.ManagementFactory;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, manifest = Config.NONE)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class ShaderBankTest {
+
+    private static final int WIDTH = 720;
+    private static final int HEIGHT = 24;
+    private static final long FRAME_NANOS = 16666667L;
+
+    /**
+     * 预热后依次播放各个状态以及之后的RECOVERY,不再创建Shader
+     */
+    @Test
+    public void prewarmCoversStateAnimations() {
+        ShaderBank bank = new ShaderBank(Frame.EDGE_STOPS);
+        bank.prewarm(Palette.DEFAULT);
+        int prewarmed = bank.allocationCount();
+        Player player = new Player(new LightRenderer(bank));
+
+        player.play(State.START, 1500);
+        player.play(State.IDLE, 500);
+        for (State state : new State[] { State.LISTENING, State.THINKING, State.SPEAKING, State.ERROR }) {
+            player.play(state, 3000);
+            player.play(State.IDLE, 2000);
+        }
+        player.stateMachine.setPrivacy(true);
+        player.play(State.IDLE, 500);
+
+        assertEquals(prewarmed, bank.allocationCount());
+    }
+
+    /**
+     * 绘制后Shader的local matrix仍然是单位矩阵,否则每次修改都会重新创建native对象
+     */
+    @Test
+    public void drawKeepsLocalMatrix() {
+        ShaderBank bank = new ShaderBank(Frame.EDGE_STOPS);
+        Player player = new Player(new LightRenderer(bank));
+        player.play(State.START, 500);
+        Frame frame = player.stateMachine.getFrame();
+        Matrix matrix = new Matrix();
+        for (int i = 0; i < ShaderBank.SLOT_COUNT; i++) {
+            assertFalse(bank.obtain(i, frame.centerColor[i], frame.edgeColor[i]).getLocalMatrix(matrix));
+        }
+        player.play(State.SPEAKING, 500);
+        assertFalse(bank.obtain(0, frame.centerColor[0], frame.edgeColor[0]).getLocalMatrix(matrix));
+    }
+
+    /**
+     * 命中缓存时不分配Java对象
+     */
+    @Test
+    public void obtainDoesNotAllocate() {
+        ShaderBank bank = new ShaderBank(Frame.EDGE_STOPS);
+        bank.prewarm(Palette.DEFAULT);
+        int foreground = Palette.DEFAULT.getForeground();
+        int background = Palette.DEFAULT.getBackground();
+        for (int i = 0; i < 10000; i++) {
+            bank.obtain(0, Argb.withAlpha(foreground, i & 0xFF), background);
+        }
+        int allocations = bank.allocationCount();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 100000; i++) {
+            bank.obtain(0, Argb.withAlpha(foreground, i & 0xFF), background);
+            bank.obtain(0, Argb.lerp(foreground, background, i & 0xFF), background);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        assertEquals(0, allocated);
+        assertEquals(allocations, bank.allocationCount());
+    }
+
+    /**
+     * 按60fps推进状态机并绘制到Bitmap
+     */
+    private static final class Player {
+        final LightStateMachine stateMachine = new LightStateMachine(Timeline.getDefault());
+        final LightRenderer renderer;
+        final Canvas canvas = new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+        long time;
+
+        Player(LightRenderer renderer) {
+            this.renderer = renderer;
+            stateMachine.setSize(WIDTH, WIDTH / 4f);
+        }
+
+        void play(State state, int millis) {
+            stateMachine.setState(state);
+            long end = time + millis * 1000000L;
+            for (; time < end; time += FRAME_NANOS) {
+                stateMachine.advance(time);
+                renderer.draw(canvas, stateMachine.getFrame(), WIDTH, HEIGHT);
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.neonlight.demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * 事件记录写出后重放,不需要Android环境
+ */
+public class TraceRecorderTest {
+
+    private static final int WIDTH = 720;
+    private static final int BASE_RADIUS = 180;
+    private static final long FRAME_NANOS = 16666667L;
+    private static final long PAUSE_NANOS = 60 * 1000000000L;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    /**
+     * 按NeonLight的顺序记录状态切换,privacy,clearAnimation,绘制和一次60秒的暂停,重放的每一帧与记录时一致.
+     * 开始时间在44位时间的回绕之前,记录中的时间跨过回绕
+     */
+    @Test
+    public void replayMatchesLive() throws Exception {
+        TraceRecorder recorder = new TraceRecorder(4096);
+        LightStateMachine live = new LightStateMachine(Timeline.getDefault());
+        final List<Frame> liveFrames = new ArrayList<Frame>();
+        long time = TraceRecorder.TIME_MASK - 2000 * 1000000L;
+        recorder.record(TraceRecorder.EVENT_WIDTH, WIDTH, time);
+        recorder.record(TraceRecorder.EVENT_BASE_RADIUS, BASE_RADIUS, time);
+        live.setSize(WIDTH, BASE_RADIUS);
+
+        time = applyState(recorder, live, State.START, time);
+        time = runFrames(recorder, live, liveFrames, time, 1500);
+        time = applyState(recorder, live, State.LISTENING, time);
+        time = runFrames(recorder, live, liveFrames, time, 1000);
+        time = applyState(recorder, live, State.THINKING, time);
+        time = runFrames(recorder, live, liveFrames, time, 300);
+
+        // THINKING进行中暂停,恢复后从暂停时的进度继续
+        recorder.record(TraceRecorder.EVENT_PAUSE, 0, time);
+        recorder.record(TraceRecorder.EVENT_CLOCK_STOP, 0, time);
+        time += PAUSE_NANOS;
+        live.shiftTime(PAUSE_NANOS);
+        recorder.record(TraceRecorder.EVENT_SHIFT, 0, time);
+        recorder.record(TraceRecorder.EVENT_CLOCK_START, 0, time);
+        time = runFrames(recorder, live, liveFrames, time, 1000);
+
+        recorder.record(TraceRecorder.EVENT_REQUEST_PRIVACY, 1, time);
+        live.setPrivacy(true);
+        recorder.record(TraceRecorder.EVENT_APPLY_PRIVACY, 1, time);
+        time = runFrames(recorder, live, liveFrames, time, 500);
+        recorder.record(TraceRecorder.EVENT_REQUEST_PRIVACY, 0, time);
+        live.setPrivacy(false);
+        recorder.record(TraceRecorder.EVENT_APPLY_PRIVACY, 0, time);
+        time = applyState(recorder, live, State.SPEAKING, time);
+        time = runFrames(recorder, live, liveFrames, time, 500);
+
+        live.clearAnimation();
+        recorder.record(TraceRecorder.EVENT_CLEAR, 0, time);
+        live.errorAnimation();
+        recorder.record(TraceRecorder.EVENT_ANIMATION, Phase.ERROR.ordinal(), time);
+        runFrames(recorder, live, liveFrames, time, 1000);
+
+        File file = mFolder.newFile("trace.bin");
+        int count = recorder.flush(file);
+        TraceReplayer replayer = TraceReplayer.read(file);
+        assertEquals(count, replayer.getEventCount());
+        final List<Frame> replayedFrames = new ArrayList<Frame>();
+        replayer.setFrameListener(new TraceReplayer.FrameListener() {
+            @Override
+            public void onFrame(long timeNanos, Frame frame) {
+                Frame copy = new Frame();
+                copy.copyFrom(frame);
+                replayedFrames.add(copy);
+            }
+        });
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        replayer.replay(new PrintStream(report, true, "UTF-8"), false);
+
+        assertEquals(liveFrames.size(), replayedFrames.size());
+        for (int i = 0; i < liveFrames.size(); i++) {
+            assertEquals("frame " + i, 0, replayedFrames.get(i).diff(liveFrames.get(i), WIDTH));
+        }
+        // 超过16位的绘制耗时截断为65535
+        assertTrue(report.toString("UTF-8"), report.toString("UTF-8").contains("max 65535 us"));
+    }
+
+    @Test
+    public void packLimits() {
+        long time = (1L << 50) + 12345L;
+        long event = TraceRecorder.pack(TraceRecorder.EVENT_SHIFT, 0xFFFF, time);
+        assertEquals(TraceRecorder.EVENT_SHIFT, TraceRecorder.typeOf(event));
+        assertEquals(0xFFFF, TraceRecorder.argOf(event));
+        // 只保留低44位
+        assertEquals(time & TraceRecorder.TIME_MASK, TraceRecorder.timeOf(event));
+        assertEquals(12345L, TraceRecorder.timeOf(event));
+
+        event = TraceRecorder.pack(15, 70000, TraceRecorder.TIME_MASK);
+        assertEquals(15, TraceRecorder.typeOf(event));
+        assertEquals(0xFFFF, TraceRecorder.argOf(event));
+        assertEquals(TraceRecorder.TIME_MASK, TraceRecorder.timeOf(event));
+
+        event = TraceRecorder.pack(TraceRecorder.EVENT_FRAME, -1, -1L);
+        assertEquals(TraceRecorder.EVENT_FRAME, TraceRecorder.typeOf(event));
+        assertEquals(0, TraceRecorder.argOf(event));
+        assertEquals(TraceRecorder.TIME_MASK, TraceRecorder.timeOf(event));
+    }
+
+    private static long applyState(TraceRecorder recorder, LightStateMachine live, State state, long time) {
+        recorder.record(TraceRecorder.EVENT_REQUEST_STATE, state.ordinal(), time);
+        live.setState(state);
+        recorder.record(TraceRecorder.EVENT_APPLY_STATE, state.ordinal(), time);
+        return time;
+    }
+
+    /**
+     * 每一帧后记录一次绘制,第一帧的绘制耗时超过16位
+     */
+    private static long runFrames(TraceRecorder recorder, LightStateMachine live, List<Frame> frames, long time,
+            long durationMillis) {
+        for (long end = time + durationMillis * 1000000L; time < end; time += FRAME_NANOS) {
+            recorder.record(TraceRecorder.EVENT_FRAME, TraceRecorder.NO_AUDIO, time);
+            live.setAudioLevel(-1);
+            live.advance(time);
+            Frame copy = new Frame();
+            copy.copyFrom(live.getFrame());
+            frames.add(copy);
+            recorder.record(TraceRecorder.EVENT_DRAW, frames.size() == 1 ? 100000 : 500, time + 1000000L);
+        }
+        return time;
+    }
+}
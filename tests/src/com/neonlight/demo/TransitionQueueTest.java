@@ -0,0 +1,134 @@
+package com.neonlight.demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TransitionQueueTest {
+
+    private static final int WRITERS = 8;
+    private static final int OFFERS_PER_WRITER = 100000;
+
+    @Test
+    public void coalescesUntilDrained() {
+        TransitionQueue queue = new TransitionQueue();
+        assertTrue(queue.offerState(State.START));
+        assertFalse(queue.offerState(State.LISTENING));
+        assertFalse(queue.offerPrivacy(true));
+        assertFalse(queue.offerState(State.THINKING));
+        int drained = queue.drain();
+        assertEquals(State.THINKING, TransitionQueue.stateOf(drained));
+        assertTrue(TransitionQueue.hasPrivacy(drained));
+        assertTrue(TransitionQueue.privacyOf(drained));
+        assertEquals(2, queue.getCoalescedCount());
+        assertEquals(TransitionQueue.EMPTY, queue.drain());
+        assertTrue(queue.offerPrivacy(false));
+        drained = queue.drain();
+        assertNull(TransitionQueue.stateOf(drained));
+        assertFalse(TransitionQueue.privacyOf(drained));
+    }
+
+    /**
+     * 多个线程同时写入,另一个线程不断取出并交给状态机:每次写入要么被取出,要么被计入合并次数,不会丢失也不会重复
+     */
+    @Test
+    public void stress() throws InterruptedException {
+        final TransitionQueue queue = new TransitionQueue();
+        final State[] states = State.values();
+        final AtomicInteger firstOffers = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        Thread[] writers = new Thread[WRITERS];
+        for (int w = 0; w < WRITERS; w++) {
+            final int seed = w;
+            writers[w] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    awaitQuietly(start);
+                    int first = 0;
+                    for (int i = 0; i < OFFERS_PER_WRITER; i++) {
+                        boolean wasEmpty = (i + seed) % 5 == 0 ? queue.offerPrivacy((i & 1) == 0)
+                                : queue.offerState(states[(i + seed) % states.length]);
+                        if (wasEmpty) {
+                            first++;
+                        }
+                    }
+                    firstOffers.addAndGet(first);
+                }
+            });
+            writers[w].start();
+        }
+        final int[] drainedCounts = new int[3];
+        final LightStateMachine stateMachine = new LightStateMachine(Timeline.getDefault());
+        stateMachine.setSize(720, 180);
+        final State[] lastState = new State[1];
+        Thread drainer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                awaitQuietly(start);
+                long time = 0;
+                while (writing.get()) {
+                    int drained = queue.drain();
+                    count(drained, drainedCounts);
+                    // 与NeonLight一样在帧开始时应用,状态机在任意的切换顺序下都要能继续推进
+                    State state = TransitionQueue.stateOf(drained);
+                    if (state != null) {
+                        stateMachine.setState(state);
+                        lastState[0] = state;
+                    }
+                    if (TransitionQueue.hasPrivacy(drained)) {
+                        stateMachine.setPrivacy(TransitionQueue.privacyOf(drained));
+                    }
+                    time += 16666667L;
+                    stateMachine.advance(time);
+                }
+            }
+        });
+        drainer.start();
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        writing.set(false);
+        drainer.join();
+        count(queue.drain(), drainedCounts);
+
+        assertEquals(lastState[0], stateMachine.getState());
+        int offers = WRITERS * OFFERS_PER_WRITER;
+        assertEquals(offers, drainedCounts[1] + drainedCounts[2] + queue.getCoalescedCount());
+        // 每次非空的取出都对应一次在空队列上的写入
+        assertEquals(firstOffers.get(), drainedCounts[0]);
+        assertEquals(TransitionQueue.EMPTY, queue.drain());
+    }
+
+    /**
+     * @param counts 非空取出的次数,取出的状态数,取出的privacy数
+     */
+    private static void count(int drained, int[] counts) {
+        if (drained == TransitionQueue.EMPTY) {
+            return;
+        }
+        counts[0]++;
+        if (TransitionQueue.stateOf(drained) != null) {
+            counts[1]++;
+        }
+        if (TransitionQueue.hasPrivacy(drained)) {
+            counts[2]++;
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.neonlight.demo;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * 离线回放WAV文件:按10ms一块写入{@link AudioLevelMeter},等后台线程算完后按60fps推进状态机
+ * <p>
+ * 不按真实时间等待,结果只取决于音频内容.也可以直接运行,输出每帧的音量,半径和圆心颜色:
+ * <pre>
+ * java com.neonlight.demo.WavReplayer &lt;wav&gt; [LISTENING|SPEAKING]
+ * </pre>
+ */
+final class WavReplayer {
+
+    static final long FRAME_NANOS = 16666667L;
+
+    interface Listener {
+        void onFrame(long timeNanos, float level, Frame frame);
+    }
+
+    /**
+     * 16位PCM的WAV,多声道时只取第一个声道
+     */
+    static final class Wav {
+        final int sampleRate;
+        final short[] samples;
+
+        Wav(int sampleRate, short[] samples) {
+            this.sampleRate = sampleRate;
+            this.samples = samples;
+        }
+    }
+
+    private WavReplayer() {
+    }
+
+    static Wav read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            if (readTag(in) != 0x52494646 /* RIFF */) {
+                throw new IOException("Not a RIFF file");
+            }
+            readIntLE(in);
+            if (readTag(in) != 0x57415645 /* WAVE */) {
+                throw new IOException("Not a WAVE file");
+            }
+            int sampleRate = 0;
+            int channels = 0;
+            while (true) {
+                int tag = readTag(in);
+                int size = readIntLE(in);
+                if (tag == 0x666d7420 /* fmt */) {
+                    int format = readShortLE(in);
+                    channels = readShortLE(in);
+                    sampleRate = readIntLE(in);
+                    readIntLE(in);
+                    readShortLE(in);
+                    int bits = readShortLE(in);
+                    if (format != 1 || bits != 16) {
+                        throw new IOException("Only 16-bit PCM is supported");
+                    }
+                    skip(in, size - 16);
+                } else if (tag == 0x64617461 /* data */) {
+                    if (channels <= 0) {
+                        throw new IOException("Missing fmt chunk");
+                    }
+                    short[] samples = new short[size / 2 / channels];
+                    for (int i = 0; i < samples.length; i++) {
+                        samples[i] = (short) readShortLE(in);
+                        skip(in, (channels - 1) * 2);
+                    }
+                    return new Wav(sampleRate, samples);
+                } else {
+                    skip(in, size + (size & 1));
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    static void write(File file, Wav wav) throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            int dataSize = wav.samples.length * 2;
+            out.writeInt(0x52494646);
+            writeIntLE(out, 36 + dataSize);
+            out.writeInt(0x57415645);
+            out.writeInt(0x666d7420);
+            writeIntLE(out, 16);
+            writeShortLE(out, 1);
+            writeShortLE(out, 1);
+            writeIntLE(out, wav.sampleRate);
+            writeIntLE(out, wav.sampleRate * 2);
+            writeShortLE(out, 2);
+            writeShortLE(out, 16);
+            out.writeInt(0x64617461);
+            writeIntLE(out, dataSize);
+            for (short sample : wav.samples) {
+                writeShortLE(out, sample);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * 在state状态下回放,每一帧回调一次
+     */
+    static void replay(Wav wav, State state, int width, float baseRadius, Listener listener) {
+        AudioLevelMeter meter = new AudioLevelMeter();
+        meter.setSampleRate(wav.sampleRate);
+        LightStateMachine stateMachine = new LightStateMachine(Timeline.getDefault());
+        stateMachine.setSize(width, baseRadius);
+        stateMachine.setState(state);
+        int block = Math.max(1, wav.sampleRate / 100);
+        short[] buffer = new short[block];
+        long written = 0;
+        long nextFrame = 0;
+        for (int offset = 0; offset + block <= wav.samples.length; offset += block) {
+            System.arraycopy(wav.samples, offset, buffer, 0, block);
+            meter.write(buffer, block);
+            written += block;
+            while (meter.getProcessedSampleCount() < written) {
+                Thread.yield();
+            }
+            long time = (offset + block) * 1000000000L / wav.sampleRate;
+            for (; nextFrame <= time; nextFrame += FRAME_NANOS) {
+                stateMachine.setAudioLevel(meter.getLevel());
+                stateMachine.advance(nextFrame);
+                listener.onFrame(nextFrame, meter.getLevel(), stateMachine.getFrame());
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: WavReplayer <wav> [LISTENING|SPEAKING]");
+            System.exit(2);
+        }
+        State state = args.length > 1 ? State.valueOf(args[1]) : State.SPEAKING;
+        replay(read(new File(args[0])), state, 720, 180, new Listener() {
+            @Override
+            public void onFrame(long timeNanos, float level, Frame frame) {
+                System.out.println(String.format(Locale.US, "%6d %.3f %7.2f %08x", timeNanos / 1000000L, level,
+                        frame.radius[0], frame.centerColor[0]));
+            }
+        });
+    }
+
+    private static int readTag(DataInputStream in) throws IOException {
+        return in.readInt();
+    }
+
+    private static int readIntLE(InputStream in) throws IOException {
+        return readShortLE(in) | readShortLE(in) << 16;
+    }
+
+    /**
+     * @return 无符号的16位整数
+     */
+    private static int readShortLE(InputStream in) throws IOException {
+        int low = in.read();
+        int high = in.read();
+        if ((low | high) < 0) {
+            throw new EOFException();
+        }
+        return low | high << 8;
+    }
+
+    private static void skip(DataInputStream in, int count) throws IOException {
+        if (count > 0) {
+            in.skipBytes(count);
+        }
+    }
+
+    private static void writeIntLE(OutputStream out, int value) throws IOException {
+        writeShortLE(out, value);
+        writeShortLE(out, value >> 16);
+    }
+
+    private static void writeShortLE(OutputStream out, int value) throws IOException {
+        out.write(value & 0xFF);
+        out.write((value >> 8) & 0xFF);
+    }
+}